@@ -0,0 +1,179 @@
+import Interpreter.Metrics;
+import Interpreter.ObjSystem.Entity;
+import Interpreter.ObjSystem.EntityType;
+import Interpreter.ObjSystem.Environment;
+import Parser.AST.Program;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/*
+ * Runner behind `karaoke bench`. Every script is lexed, parsed and evaluated in a fresh
+ * global environment through the same pipeline and on the same large-stack thread as a
+ * script passed to Karaoke, first for the warmup runs and then for the measured ones.
+ * Time and allocated bytes are the medians of the measured runs; bytes are counted on
+ * the evaluating thread only, so spawned tasks are not included. The peak call depth
+ * of that thread comes from one extra run with Metrics switched on, so the counters
+ * don't slow down the timed runs. Results are written as CSV, and with a
+ * baseline file from an earlier run every script that got slower or allocates more
+ * than the tolerance allows is reported as a regression.
+ */
+public class Bench {
+    private static final String USAGE = "Usage: karaoke bench [--warmup=n] [--repeat=n] [--out=file] " +
+            "[--baseline=file] [--tolerance=percent] [script or directory...]";
+    private static final String HEADER = "script,median_ms,min_ms,alloc_bytes,peak_depth";
+
+    private record Result(String script, double medianMillis, double minMillis, long allocBytes, long peakDepth) {}
+
+    static int run(String[] args) throws IOException {
+        int warmup = 3, repeat = 5;
+        double tolerance = 10;
+        Path out = Paths.get("bench-results.csv");
+        Path baseline = null;
+        List<Path> targets = new ArrayList<>(0);
+        try {
+            for (String arg: args) {
+                if (arg.startsWith("--warmup="))
+                    warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+                else if (arg.startsWith("--repeat="))
+                    repeat = Integer.parseInt(arg.substring("--repeat=".length()));
+                else if (arg.startsWith("--out="))
+                    out = Paths.get(arg.substring("--out=".length()));
+                else if (arg.startsWith("--baseline="))
+                    baseline = Paths.get(arg.substring("--baseline=".length()));
+                else if (arg.startsWith("--tolerance="))
+                    tolerance = Double.parseDouble(arg.substring("--tolerance=".length()));
+                else if (arg.startsWith("--")) {
+                    System.out.println(USAGE);
+                    return 64;
+                }
+                else targets.add(Paths.get(arg));
+            }
+        } catch (NumberFormatException e) {
+            System.out.println(USAGE);
+            return 64;
+        }
+        if (repeat < 1 || warmup < 0) {
+            System.out.println(USAGE);
+            return 64;
+        }
+        if (targets.isEmpty())
+            targets.add(Paths.get("bench"));
+
+        List<Path> scripts = new ArrayList<>(0);
+        for (Path target: targets) {
+            if (Files.isDirectory(target)) {
+                try (Stream<Path> files = Files.list(target)) {
+                    files.filter(p -> p.toString().endsWith(".ka")).sorted().forEach(scripts::add);
+                }
+            }
+            else scripts.add(target);
+        }
+
+        boolean failed = false;
+        List<Result> results = new ArrayList<>(0);
+        System.out.printf("%-32s %10s %10s %14s %8s%n", "script", "median ms", "min ms", "alloc bytes", "depth");
+        for (Path script: scripts) {
+            String source = new String(Files.readAllBytes(script), Charset.defaultCharset());
+            String name = script.getFileName().toString();
+            try {
+                Result result = measure(name, source, warmup, repeat);
+                results.add(result);
+                System.out.printf("%-32s %10.2f %10.2f %14d %8d%n", name, result.medianMillis(), result.minMillis(),
+                        result.allocBytes(), result.peakDepth());
+            } catch (IllegalStateException e) {
+                System.out.printf("%-32s FAILED: %s%n", name, e.getMessage());
+                failed = true;
+            }
+        }
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(out))) {
+            writer.println(HEADER);
+            for (Result r: results)
+                writer.printf(Locale.ROOT, "%s,%.3f,%.3f,%d,%d%n", r.script(), r.medianMillis(), r.minMillis(),
+                        r.allocBytes(), r.peakDepth());
+        }
+        if (baseline != null && compare(results, readResults(baseline), tolerance))
+            failed = true;
+        return failed ? 1 : 0;
+    }
+
+    private static Result measure(String name, String source, int warmup, int repeat) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < warmup; i++)
+            evaluate(source);
+        double[] millis = new double[repeat];
+        long[] bytes = new long[repeat];
+        for (int i = 0; i < repeat; i++) {
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            evaluate(source);
+            millis[i] = (System.nanoTime() - start) / 1e6;
+            bytes[i] = threads.getCurrentThreadAllocatedBytes() - allocated;
+        }
+
+        boolean metrics = Metrics.enabled;
+        long peakDepth;
+        Metrics.enabled = true;
+        Metrics.takeThreadPeakDepth();
+        try {
+            evaluate(source);
+        } finally {
+            peakDepth = Metrics.takeThreadPeakDepth();
+            Metrics.enabled = metrics;
+        }
+        Arrays.sort(millis);
+        Arrays.sort(bytes);
+        return new Result(name, millis[repeat / 2], millis[0], bytes[repeat / 2], peakDepth);
+    }
+
+    private static void evaluate(String source) {
+        List<String> errors = new ArrayList<>(0);
+        Program program = Karaoke.parse(source, errors);
+        if (!errors.isEmpty())
+            throw new IllegalStateException(errors.get(0));
+        Entity result = Karaoke.evaluate(program, new Environment());
+        if (result != null && result.Type() == EntityType.ERROR_OBJ)
+            throw new IllegalStateException(result.Inspect());
+    }
+
+    private static Map<String, Result> readResults(Path file) throws IOException {
+        Map<String, Result> results = new HashMap<>(0);
+        for (String line: Files.readAllLines(file)) {
+            if (line.isEmpty() || line.equals(HEADER))
+                continue;
+            String[] fields = line.split(",");
+            results.put(fields[0], new Result(fields[0], Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                    Long.parseLong(fields[3]), Long.parseLong(fields[4])));
+        }
+        return results;
+    }
+
+    // Prints the change of every script against the baseline, returns whether one of them regressed.
+    private static boolean compare(List<Result> results, Map<String, Result> baseline, double tolerance) {
+        boolean regressed = false;
+        System.out.printf("%n%-32s %10s %10s%n", "against baseline", "time", "alloc");
+        for (Result r: results) {
+            Result base = baseline.get(r.script());
+            if (base == null) {
+                System.out.printf("%-32s %10s%n", r.script(), "new");
+                continue;
+            }
+            double time = change(r.medianMillis(), base.medianMillis());
+            double alloc = change(r.allocBytes(), base.allocBytes());
+            boolean slower = time > tolerance || alloc > tolerance;
+            regressed |= slower;
+            System.out.printf("%-32s %+9.1f%% %+9.1f%%%s%n", r.script(), time, alloc, slower ? "  REGRESSION" : "");
+        }
+        return regressed;
+    }
+
+    private static double change(double current, double base) {
+        return base == 0 ? 0 : (current - base) / base * 100;
+    }
+}
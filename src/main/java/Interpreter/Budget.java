@@ -0,0 +1,127 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.ErrorMsg;
+
+/*
+ * Resource limits for one execution. A limit of 0 means unlimited. The budget is
+ * bound to the evaluating thread by Interpreter.eval(Node, Environment, Budget) and
+ * checked at guest calls, block entries and allocating operations; once a limit is
+ * exceeded every later check returns the same error, so the script unwinds through
+ * the normal error propagation. A task started with spawn() runs under a fork of the
+ * budget of its parent, if there is one. A task without a budget is cancelled by
+ * interrupting its thread, which the same checkpoints look at through interrupted().
+ */
+public final class Budget {
+
+    private static final ThreadLocal<Budget> current = new ThreadLocal<>();
+    // spares the thread-local lookup at every checkpoint as long as no budget was ever bound
+    private static volatile boolean used = false;
+    // the same for the interrupt check, until the first thread that can be cancelled is started
+    private static volatile boolean cancellable = false;
+    private static final int CLOCK_INTERVAL = 256;
+
+    private final long maxSteps;
+    private final long timeoutMillis;
+    private final int maxDepth;
+    private final long maxAllocations;
+
+    private long steps;
+    private long allocations;
+    private int depth;
+    private long deadline;
+    private ErrorMsg exceeded;
+    private volatile boolean cancelled = false;
+
+    public Budget(long pMaxSteps, long pTimeoutMillis, int pMaxDepth, long pMaxAllocations) {
+        this.maxSteps = pMaxSteps;
+        this.timeoutMillis = pTimeoutMillis;
+        this.maxDepth = pMaxDepth;
+        this.maxAllocations = pMaxAllocations;
+    }
+
+    static Budget current() {
+        return used ? current.get() : null;
+    }
+
+    static Budget bind(Budget budget) {
+        if (budget != null)
+            used = true;
+        Budget previous = current.get();
+        current.set(budget);
+        return previous;
+    }
+
+    /* Called before starting a thread that is cancelled by interrupting it. */
+    static void cancellable() {
+        cancellable = true;
+    }
+
+    /* Whether the calling thread, running without a budget, was cancelled. */
+    static boolean interrupted() {
+        return cancellable && Thread.currentThread().isInterrupted();
+    }
+
+    void start() {
+        this.steps = 0;
+        this.allocations = 0;
+        this.depth = 0;
+        this.exceeded = null;
+        this.deadline = this.timeoutMillis > 0 ? System.nanoTime() + this.timeoutMillis * 1_000_000 : 0;
+    }
+
+    /* Budget of a task spawned under this one: the same limits and deadline, but its own counters. */
+    Budget fork() {
+        Budget child = new Budget(this.maxSteps, this.timeoutMillis, this.maxDepth, this.maxAllocations);
+        child.start();
+        child.deadline = this.deadline;
+        return child;
+    }
+
+    /* Makes the next checkpoint of the thread running under this budget fail. */
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    ErrorMsg step() {
+        if (this.exceeded != null)
+            return this.exceeded;
+        if (this.cancelled)
+            return this.exceed("task cancelled");
+        this.steps++;
+        if (this.maxSteps > 0 && this.steps > this.maxSteps)
+            return this.exceed("budget exceeded - more than %d steps", this.maxSteps);
+        if (this.deadline != 0 && this.steps % CLOCK_INTERVAL == 0 && System.nanoTime() - this.deadline > 0)
+            return this.exceed("budget exceeded - timeout after %d ms", this.timeoutMillis);
+        return null;
+    }
+
+    ErrorMsg enter() {
+        ErrorMsg error = this.step();
+        if (error != null)
+            return error;
+        if (this.maxDepth > 0 && this.depth >= this.maxDepth)
+            return this.exceed("budget exceeded - call depth above %d", this.maxDepth);
+        this.depth++;
+        return null;
+    }
+
+    void exit() {
+        this.depth--;
+    }
+
+    ErrorMsg allocate(long count) {
+        if (this.exceeded != null)
+            return this.exceeded;
+        if (this.cancelled)
+            return this.exceed("task cancelled");
+        this.allocations += count;
+        if (this.maxAllocations > 0 && this.allocations > this.maxAllocations)
+            return this.exceed("budget exceeded - more than %d allocated entities", this.maxAllocations);
+        return null;
+    }
+
+    private ErrorMsg exceed(String format, Object... limits) {
+        this.exceeded = new ErrorMsg(format, limits);
+        return this.exceeded;
+    }
+}
@@ -0,0 +1,105 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.BuiltIn;
+import Interpreter.ObjSystem.BuiltInFunction;
+import Interpreter.ObjSystem.Entity;
+import Interpreter.ObjSystem.FunctionObj;
+import Parser.AST.Expression;
+import Parser.AST.Expressions.CallExpression;
+import Parser.AST.Expressions.FunctionLiteral;
+
+/*
+ * A CallExpression together with its inline cache, put in place of the call by the
+ * Linker. It remembers the calling convention of the last few callees, keyed by the
+ * FunctionLiteral of a guest function (so all closures of one literal share an entry)
+ * or by the function of a builtin. A hit costs one identity comparison per cached
+ * entry; after MAX_TARGETS distinct callees the site is megamorphic and targets are
+ * prepared on every call. It is no record, since the cache must not take part in
+ * comparing syntax trees.
+ */
+public final class CallSite implements Expression {
+
+    static final int MAX_TARGETS = 4;
+
+    record Target(Object key, BuiltInFunction builtin, String[] params, int arity) {}
+
+    private final CallExpression call;
+    private final Target[] targets = new Target[MAX_TARGETS];
+
+    public CallSite(CallExpression pCall) {
+        this.call = pCall;
+    }
+
+    public CallExpression call() {
+        return this.call;
+    }
+
+    Target target(Entity callee) {
+        Object key = key(callee);
+        if (key == null)
+            return null;
+        for (int i = 0; i < MAX_TARGETS; i++) {
+            Target cached = this.targets[i];
+            if (cached == null) {
+                cached = prepare(callee, key);
+                this.targets[i] = cached;
+                return cached;
+            }
+            if (cached.key() == key)
+                return cached;
+        }
+        return prepare(callee, key);
+    }
+
+    // the target of a call without a site, or null if the callee is no function
+    static Target uncached(Entity callee) {
+        Object key = key(callee);
+        return key != null ? prepare(callee, key) : null;
+    }
+
+    private static Object key(Entity callee) {
+        if (callee.getClass() == FunctionObj.class)
+            return ((FunctionObj) callee).literal();
+        else if (callee.getClass() == BuiltIn.class)
+            return ((BuiltIn) callee).fn();
+        return null;
+    }
+
+    static Target prepare(Entity callee, Object key) {
+        if (callee.getClass() == BuiltIn.class)
+            return new Target(key, ((BuiltIn) callee).fn(), null, ((BuiltIn) callee).fn().arity());
+        FunctionLiteral literal = (FunctionLiteral) key;
+        String[] params = new String[literal.parameters().size()];
+        for (int i = 0; i < params.length; i++)
+            params[i] = literal.parameters().get(i).value();
+        return new Target(key, null, params, params.length);
+    }
+
+    @Override
+    public void expressionNode() { }
+
+    @Override
+    public String tokenLiteral() {
+        return this.call.tokenLiteral();
+    }
+
+    @Override
+    public int length() {
+        return this.call.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return this.call.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return this.call.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return this.call.toString();
+    }
+}
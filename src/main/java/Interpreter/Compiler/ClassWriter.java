@@ -0,0 +1,132 @@
+package Interpreter.Compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Minimal class file writer for the JIT. Classes are emitted as version 49, which
+ * the JVM verifies by type inference, so no StackMapTable has to be computed.
+ */
+final class ClassWriter {
+
+    private static final int VERSION = 49;
+    static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(this.poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>(0);
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(this.methodBytes);
+    private int methodCount = 0;
+
+    int utf8(String value) {
+        return this.entry("U" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = this.utf8(internalName);
+        return this.entry("C" + internalName, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int intConst(int value) {
+        return this.entry("I" + value, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int ownerIndex = this.classRef(owner);
+        int nameIndex = this.utf8(name);
+        int descIndex = this.utf8(descriptor);
+        int nameAndType = this.entry("N" + name + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descIndex);
+        });
+        return this.entry("M" + owner + "." + name + descriptor, out -> {
+            out.writeByte(10);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    void method(int access, String name, String descriptor, Code code) {
+        byte[] bytecode = code.toBytes();
+        int nameIndex = this.utf8(name);
+        int descIndex = this.utf8(descriptor);
+        int codeIndex = this.utf8("Code");
+        try {
+            this.methods.writeShort(access);
+            this.methods.writeShort(nameIndex);
+            this.methods.writeShort(descIndex);
+            this.methods.writeShort(1);
+            this.methods.writeShort(codeIndex);
+            this.methods.writeInt(12 + bytecode.length);
+            this.methods.writeShort(code.maxStack);
+            this.methods.writeShort(code.maxLocals);
+            this.methods.writeInt(bytecode.length);
+            this.methods.write(bytecode);
+            this.methods.writeShort(0);
+            this.methods.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.methodCount++;
+    }
+
+    byte[] toBytes(String thisName, String superName, String interfaceName) {
+        int thisIndex = this.classRef(thisName);
+        int superIndex = this.classRef(superName);
+        int interfaceIndex = this.classRef(interfaceName);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(this.poolCount);
+            out.write(this.poolBytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(1);
+            out.writeShort(interfaceIndex);
+            out.writeShort(0);
+            out.writeShort(this.methodCount);
+            out.write(this.methodBytes.toByteArray());
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int entry(String key, EntryWriter writer) {
+        Integer index = this.poolIndex.get(key);
+        if (index != null)
+            return index;
+        try {
+            writer.write(this.pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.poolIndex.put(key, this.poolCount);
+        return this.poolCount++;
+    }
+}
@@ -0,0 +1,121 @@
+package Interpreter.Compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Bytecode buffer for a single method. Tracks the operand stack depth so the
+ * Code attribute can be written without a separate analysis pass.
+ */
+final class Code {
+
+    static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13;
+    static final int ILOAD = 0x15, ALOAD = 0x19, ISTORE = 0x36;
+    static final int IALOAD = 0x2e, POP = 0x57;
+    static final int IADD = 0x60, ISUB = 0x64, IMUL = 0x68, IDIV = 0x6c, INEG = 0x74, IXOR = 0x82;
+    static final int IFEQ = 0x99, IFNE = 0x9a;
+    static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7, IRETURN = 0xac, RETURN = 0xb1, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7,
+            INVOKESTATIC = 0xb8;
+
+    static final class Label {
+        int position = -1;
+        final List<int[]> uses = new ArrayList<>(0);
+    }
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final List<Label> labels = new ArrayList<>(0);
+    private int stack = 0;
+    int maxStack = 0;
+    int maxLocals;
+
+    Code(int pMaxLocals) {
+        this.maxLocals = pMaxLocals;
+    }
+
+    void op(int opcode, int stackDelta) {
+        this.bytes.write(opcode);
+        this.adjust(stackDelta);
+    }
+
+    void op1(int opcode, int operand, int stackDelta) {
+        this.bytes.write(opcode);
+        this.bytes.write(operand);
+        this.adjust(stackDelta);
+    }
+
+    void op2(int opcode, int operand, int stackDelta) {
+        this.bytes.write(opcode);
+        this.u2(operand);
+        this.adjust(stackDelta);
+    }
+
+    void pushInt(int value, ClassWriter cw) {
+        if (value >= -1 && value <= 5)
+            this.op(ICONST_0 + value, 1);
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+            this.op1(BIPUSH, value & 0xff, 1);
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            this.op2(SIPUSH, value & 0xffff, 1);
+        else
+            this.op2(LDC_W, cw.intConst(value), 1);
+    }
+
+    void load(int slot) {
+        this.op1(ILOAD, slot, 1);
+    }
+
+    void store(int slot) {
+        this.op1(ISTORE, slot, -1);
+        this.maxLocals = Math.max(this.maxLocals, slot + 1);
+    }
+
+    void jump(int opcode, Label target, int stackDelta) {
+        target.uses.add(new int[] {this.bytes.size(), this.bytes.size() + 1});
+        this.bytes.write(opcode);
+        this.u2(0);
+        this.adjust(stackDelta);
+    }
+
+    Label newLabel() {
+        Label label = new Label();
+        this.labels.add(label);
+        return label;
+    }
+
+    void bind(Label label) {
+        label.position = this.bytes.size();
+    }
+
+    /* Control flow merges are structured, so the depth at a join is known by the caller. */
+    void setStack(int depth) {
+        this.stack = depth;
+    }
+
+    int stack() {
+        return this.stack;
+    }
+
+    byte[] toBytes() {
+        byte[] out = this.bytes.toByteArray();
+        for (Label label: this.labels) {
+            for (int[] use: label.uses) {
+                int offset = label.position - use[0];
+                out[use[1]] = (byte) (offset >> 8);
+                out[use[1] + 1] = (byte) offset;
+            }
+        }
+        return out;
+    }
+
+    private void u2(int value) {
+        this.bytes.write(value >> 8);
+        this.bytes.write(value);
+    }
+
+    private void adjust(int delta) {
+        this.stack += delta;
+        this.maxStack = Math.max(this.maxStack, this.stack);
+    }
+}
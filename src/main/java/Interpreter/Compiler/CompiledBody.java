@@ -0,0 +1,20 @@
+package Interpreter.Compiler;
+
+/*
+ * Entry point of a function body translated to bytecode. Arguments and the result
+ * are primitive ints; boolean results are encoded as 0 and 1. Bodies with up to four
+ * parameters implement the matching fixed-arity method, the others the array one.
+ */
+public interface CompiledBody {
+    int call(int[] args);
+
+    default int call0() { return this.call(new int[0]); }
+
+    default int call1(int a) { return this.call(new int[] {a}); }
+
+    default int call2(int a, int b) { return this.call(new int[] {a, b}); }
+
+    default int call3(int a, int b, int c) { return this.call(new int[] {a, b, c}); }
+
+    default int call4(int a, int b, int c, int d) { return this.call(new int[] {a, b, c, d}); }
+}
@@ -0,0 +1,76 @@
+package Interpreter.Compiler;
+
+import Interpreter.Interpreter;
+import Interpreter.ObjSystem.EnclosedEnvironment;
+import Interpreter.ObjSystem.ErrorMsg;
+import Interpreter.ObjSystem.FunctionObj;
+import Interpreter.ObjSystem.Entity;
+import Interpreter.ObjSystem.IntegerObj;
+
+/*
+ * A body that is unbounded loops or calls itself without budget checks. A body with
+ * self calls was compiled for the function bound to selfName, so it only runs while
+ * that name still refers to the function being called. Loop heads and self calls
+ * still check the interrupt status of the thread, so a cancelled task or generator
+ * leaves compiled code with the same error it gets at an interpreted checkpoint.
+ */
+public record CompiledFunction(CompiledBody body, int arity, boolean returnsBool, boolean unbounded, String selfName) {
+
+    private static final class Cancelled extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Cancelled() {
+            super(null, null, false, false);
+        }
+    }
+
+    /* Called by compiled bodies at every loop head and self call. */
+    static void checkInterrupt() {
+        if (Thread.currentThread().isInterrupted())
+            throw new Cancelled();
+    }
+
+    /*
+     * Runs the compiled body on the arguments bound in the frame if every one of them
+     * is an INT, otherwise returns null so the caller falls back to the interpreter.
+     */
+    public Entity invoke(FunctionObj fn, EnclosedEnvironment frame) {
+        if (this.selfName != null && fn.env().get(this.selfName) != fn)
+            return null;
+        for (int i = 0; i < this.arity; i++) {
+            if (frame.argument(i).getClass() != IntegerObj.class)
+                return null;
+        }
+        int result;
+        try {
+            result = this.call(frame);
+        } catch (Cancelled e) {
+            return new ErrorMsg("task cancelled");
+        }
+        if (this.returnsBool)
+            return result != 0 ? Interpreter.TRUE : Interpreter.FALSE;
+        return new IntegerObj(result);
+    }
+
+    private int call(EnclosedEnvironment frame) {
+        int result;
+        switch (this.arity) {
+            case 0 -> result = this.body.call0();
+            case 1 -> result = this.body.call1(intArg(frame, 0));
+            case 2 -> result = this.body.call2(intArg(frame, 0), intArg(frame, 1));
+            case 3 -> result = this.body.call3(intArg(frame, 0), intArg(frame, 1), intArg(frame, 2));
+            case 4 -> result = this.body.call4(intArg(frame, 0), intArg(frame, 1), intArg(frame, 2), intArg(frame, 3));
+            default -> {
+                int[] values = new int[this.arity];
+                for (int i = 0; i < this.arity; i++)
+                    values[i] = intArg(frame, i);
+                result = this.body.call(values);
+            }
+        }
+        return result;
+    }
+
+    private static int intArg(EnclosedEnvironment frame, int index) {
+        return ((IntegerObj) frame.argument(index)).value();
+    }
+}
@@ -0,0 +1,454 @@
+package Interpreter.Compiler;
+
+import Interpreter.CallSite;
+import Parser.AST.Expression;
+import Parser.AST.Statement;
+import Parser.AST.Expressions.*;
+import Parser.AST.Statements.*;
+
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Translates the body of a hot function into a hidden class implementing CompiledBody.
+ * Only bodies that provably stay within INT and BOOLEAN values are compiled: the
+ * parameters are assumed to be INTs (CompiledFunction checks this on every call),
+ * locals come from top-level var statements and loop variables, assignments and
+ * loops only touch those locals, and every path has to end in an INT or BOOLEAN result.
+ * Translating a body is also the type inference: every expression is given a kind or
+ * the translation gives up. Calls of the function to itself are compiled too; their
+ * result kind is assumed first (INT, then BOOLEAN) and the assumption has to match
+ * what the body returns. A self call in tail position becomes a jump back to the
+ * start of the body, so tail-recursive helpers run as loops. Anything the interpreter could answer with an ErrorMsg or a
+ * non-primitive value makes the function stay interpreted.
+ */
+public final class JitCompiler {
+
+    public static boolean enabled = !"false".equals(System.getProperty("karaoke.jit"));
+    public static int threshold = Integer.getInteger("karaoke.jit.threshold", 1000);
+
+    private static final String CLASS_NAME = "Interpreter/Compiler/JitBody";
+    private static final String BODY_INTERFACE = "Interpreter/Compiler/CompiledBody";
+    private static final String FUNCTION_CLASS = "Interpreter/Compiler/CompiledFunction";
+    private static final int MAX_FIXED_ARITY = 4;
+    private static final int MAX_SLOT = 250;
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private enum Kind { INT, BOOL }
+
+    private record Local(int slot, Kind kind) {}
+
+    private static final class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final ClassWriter cw = new ClassWriter();
+    private final int arity;
+    private final int firstParamSlot;
+    private final Code code;
+    private final Map<String, Local> locals = new HashMap<>(0);
+    private int nextSlot;
+    private Kind resultKind = null;
+    private final String selfName;
+    private final Kind assumedResult;
+    private final Code.Label start;
+    private boolean selfCalls = false;
+    private boolean unbounded = false;
+
+    private JitCompiler(int pArity, String pSelfName, Kind pAssumedResult) {
+        this.arity = pArity;
+        this.selfName = pSelfName;
+        this.assumedResult = pAssumedResult;
+        // fixed-arity entry points get their arguments in slots 1..n, call(int[]) has the array in slot 1
+        this.firstParamSlot = pArity <= MAX_FIXED_ARITY ? 1 : 2;
+        this.code = new Code(this.firstParamSlot + pArity);
+        this.nextSlot = this.firstParamSlot + pArity;
+        this.start = this.code.newLabel();
+    }
+
+    public static CompiledFunction compile(FunctionLiteral fn) {
+        List<Identifier> params = fn.parameters();
+        if (params == null || fn.body() == null || params.size() + 2 > MAX_SLOT)
+            return null;
+        for (Kind assumed: Kind.values()) {
+            JitCompiler compiler = new JitCompiler(params.size(), fn.name(), assumed);
+            try {
+                byte[] classBytes = compiler.translate(params, fn.body());
+                // without self calls the assumption played no role
+                if (compiler.selfCalls && compiler.resultKind != assumed)
+                    continue;
+                Class<?> hidden = lookup.defineHiddenClass(classBytes, true).lookupClass();
+                CompiledBody body = (CompiledBody) hidden.getDeclaredConstructor().newInstance();
+                return new CompiledFunction(body, params.size(), compiler.resultKind == Kind.BOOL, compiler.unbounded,
+                        compiler.selfCalls ? fn.name() : null);
+            } catch (Unsupported e) {
+                // a failure before the first self call happens again under any assumption
+                if (!compiler.selfCalls)
+                    return null;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private byte[] translate(List<Identifier> params, BlockStatement body) {
+        for (int i = 0; i < params.size(); i++) {
+            if (this.arity > MAX_FIXED_ARITY) {
+                this.code.op1(Code.ALOAD, 1, 1);
+                this.code.pushInt(i, this.cw);
+                this.code.op(Code.IALOAD, -1);
+                this.code.store(this.firstParamSlot + i);
+            }
+            this.locals.put(params.get(i).value(), new Local(this.firstParamSlot + i, Kind.INT));
+        }
+        this.code.bind(this.start);
+        this.tailBlock(body, true);
+
+        if (this.arity > MAX_FIXED_ARITY)
+            this.cw.method(ClassWriter.ACC_PUBLIC, "call", "([I)I", this.code);
+        else {
+            String descriptor = "(" + "I".repeat(this.arity) + ")I";
+            this.cw.method(ClassWriter.ACC_PUBLIC, "call" + this.arity, descriptor, this.code);
+            Code bridge = new Code(2);
+            bridge.op1(Code.ALOAD, 0, 1);
+            for (int i = 0; i < this.arity; i++) {
+                bridge.op1(Code.ALOAD, 1, 1);
+                bridge.pushInt(i, this.cw);
+                bridge.op(Code.IALOAD, -1);
+            }
+            bridge.op2(Code.INVOKEVIRTUAL, this.cw.methodRef(CLASS_NAME, "call" + this.arity, descriptor), -this.arity);
+            bridge.op(Code.IRETURN, -1);
+            this.cw.method(ClassWriter.ACC_PUBLIC, "call", "([I)I", bridge);
+        }
+
+        Code init = new Code(1);
+        init.op1(Code.ALOAD, 0, 1);
+        init.op2(Code.INVOKESPECIAL, this.cw.methodRef("java/lang/Object", "<init>", "()V"), -1);
+        init.op(Code.RETURN, 0);
+        this.cw.method(ClassWriter.ACC_PUBLIC, "<init>", "()V", init);
+        return this.cw.toBytes(CLASS_NAME, "java/lang/Object", BODY_INTERFACE);
+    }
+
+    // A block whose value is the function result: every path has to return.
+    private void tailBlock(BlockStatement block, boolean topLevel) {
+        List<Statement> stmts = block.statements();
+        if (stmts.isEmpty())
+            throw new Unsupported();
+        for (int i = 0; i < stmts.size() - 1; i++)
+            this.effect(stmts.get(i), topLevel);
+        this.tail(stmts.get(stmts.size() - 1));
+    }
+
+    // A block whose value is discarded, e.g. an if without else in the middle of a body.
+    private void effectBlock(BlockStatement block) {
+        for (Statement stmt: block.statements())
+            this.effect(stmt, false);
+    }
+
+    private void tail(Statement stmt) {
+        if (stmt.getClass() == ReturnStatement.class)
+            this.returnValue(((ReturnStatement) stmt).value());
+        else if (stmt.getClass() == ExpressionStatement.class) {
+            Expression value = ((ExpressionStatement) stmt).value();
+            if (value != null && value.getClass() == IfExpression.class) {
+                IfExpression ifExpr = (IfExpression) value;
+                if (ifExpr.alternative() == null)
+                    throw new Unsupported();
+                Code.Label otherwise = this.code.newLabel();
+                this.condition(ifExpr.condition());
+                this.code.jump(Code.IFEQ, otherwise, -1);
+                this.tailBlock(ifExpr.consequence(), false);
+                this.code.bind(otherwise);
+                this.code.setStack(0);
+                this.tailBlock(ifExpr.alternative(), false);
+            }
+            else this.returnValue(value);
+        }
+        else throw new Unsupported();
+    }
+
+    private void effect(Statement stmt, boolean topLevel) {
+        if (stmt.getClass() == LetStatement.class && topLevel) {
+            LetStatement let = (LetStatement) stmt;
+            Kind kind = this.expression(let.value());
+            Local local = this.locals.get(let.name().value());
+            if (local == null) {
+                if (this.nextSlot >= MAX_SLOT)
+                    throw new Unsupported();
+                local = new Local(this.nextSlot++, kind);
+                this.locals.put(let.name().value(), local);
+            }
+            else if (local.kind() != kind)
+                throw new Unsupported();
+            this.code.store(local.slot());
+        }
+        else if (stmt.getClass() == AssignStatement.class) {
+            AssignStatement assign = (AssignStatement) stmt;
+            Local local = this.locals.get(assign.name().value());
+            // names outside the frame live in environments the compiled body can't see
+            if (local == null || this.expression(assign.value()) != local.kind())
+                throw new Unsupported();
+            this.code.store(local.slot());
+        }
+        else if (stmt.getClass() == WhileStatement.class) {
+            WhileStatement loop = (WhileStatement) stmt;
+            Code.Label top = this.code.newLabel();
+            Code.Label end = this.code.newLabel();
+            this.unbounded = true;
+            this.code.bind(top);
+            this.checkInterrupt();
+            this.condition(loop.condition());
+            this.code.jump(Code.IFEQ, end, -1);
+            this.effectBlock(loop.body());
+            this.code.jump(Code.GOTO, top, 0);
+            this.code.bind(end);
+            this.code.setStack(0);
+        }
+        else if (stmt.getClass() == ForStatement.class)
+            this.forRange((ForStatement) stmt);
+        else if (stmt.getClass() == ReturnStatement.class)
+            this.returnValue(((ReturnStatement) stmt).value());
+        else if (stmt.getClass() == ExpressionStatement.class) {
+            Expression value = ((ExpressionStatement) stmt).value();
+            if (value != null && value.getClass() == IfExpression.class) {
+                IfExpression ifExpr = (IfExpression) value;
+                Code.Label otherwise = this.code.newLabel();
+                Code.Label end = this.code.newLabel();
+                this.condition(ifExpr.condition());
+                this.code.jump(Code.IFEQ, otherwise, -1);
+                this.effectBlock(ifExpr.consequence());
+                this.code.jump(Code.GOTO, end, 0);
+                this.code.bind(otherwise);
+                this.code.setStack(0);
+                if (ifExpr.alternative() != null)
+                    this.effectBlock(ifExpr.alternative());
+                this.code.bind(end);
+                this.code.setStack(0);
+            }
+            else {
+                // still evaluated, a division by zero has to surface exactly as in the interpreter
+                this.expression(value);
+                this.code.op(Code.POP, -1);
+            }
+        }
+        else throw new Unsupported();
+    }
+
+    /*
+     * Only INT ranges are compiled. Like the interpreter, the loop counts in a hidden
+     * slot, so assigning to the loop variable in the body does not change the number
+     * of iterations. A loop variable that is new to the frame is only visible inside
+     * the loop, as it is unbound after a loop that never ran.
+     */
+    private void forRange(ForStatement loop) {
+        if (loop.end() == null || this.nextSlot + 3 > MAX_SLOT)
+            throw new Unsupported();
+        String name = loop.variable().value();
+        Local variable = this.locals.get(name);
+        if (variable != null && variable.kind() != Kind.INT)
+            throw new Unsupported();
+        int counter = this.nextSlot++;
+        int end = this.nextSlot++;
+        if (this.expression(loop.iterable()) != Kind.INT)
+            throw new Unsupported();
+        this.code.store(counter);
+        if (this.expression(loop.end()) != Kind.INT)
+            throw new Unsupported();
+        this.code.store(end);
+        boolean scoped = variable == null;
+        if (scoped) {
+            variable = new Local(this.nextSlot++, Kind.INT);
+            this.locals.put(name, variable);
+        }
+
+        Code.Label top = this.code.newLabel();
+        Code.Label exit = this.code.newLabel();
+        this.unbounded = true;
+        this.code.bind(top);
+        this.checkInterrupt();
+        this.code.load(counter);
+        this.code.load(end);
+        this.code.jump(Code.IF_ICMPGE, exit, -2);
+        this.code.load(counter);
+        this.code.store(variable.slot());
+        this.effectBlock(loop.body());
+        this.code.load(counter);
+        this.code.pushInt(1, this.cw);
+        this.code.op(Code.IADD, -1);
+        this.code.store(counter);
+        this.code.jump(Code.GOTO, top, 0);
+        this.code.bind(exit);
+        this.code.setStack(0);
+        if (scoped)
+            this.locals.remove(name);
+    }
+
+    private void returnValue(Expression value) {
+        if (this.isSelfCall(value)) {
+            this.tailCall(call(value));
+            return;
+        }
+        Kind kind = this.expression(value);
+        if (this.resultKind == null)
+            this.resultKind = kind;
+        else if (this.resultKind != kind)
+            throw new Unsupported();
+        this.code.op(Code.IRETURN, -1);
+        this.code.setStack(0);
+    }
+
+    // The call an expression makes, linked or not, or null if it is no call.
+    private static CallExpression call(Expression expr) {
+        if (expr != null && expr.getClass() == CallSite.class)
+            return ((CallSite) expr).call();
+        return expr != null && expr.getClass() == CallExpression.class ? (CallExpression) expr : null;
+    }
+
+    // A call of the function being compiled through its own name, which no local shadows.
+    private boolean isSelfCall(Expression expr) {
+        CallExpression call = call(expr);
+        if (call == null || this.selfName == null)
+            return false;
+        Expression callee = call.function();
+        return callee.getClass() == Identifier.class && ((Identifier) callee).value().equals(this.selfName)
+                && !this.locals.containsKey(this.selfName);
+    }
+
+    private void selfCall(CallExpression call) {
+        if (this.arity > MAX_FIXED_ARITY || call.params().size() != this.arity)
+            throw new Unsupported();
+        this.selfCalls = true;
+        this.unbounded = true;
+        this.checkInterrupt();
+        this.code.op1(Code.ALOAD, 0, 1);
+        for (Expression arg: call.params()) {
+            if (this.expression(arg) != Kind.INT)
+                throw new Unsupported();
+        }
+        String descriptor = "(" + "I".repeat(this.arity) + ")I";
+        this.code.op2(Code.INVOKEVIRTUAL, this.cw.methodRef(CLASS_NAME, "call" + this.arity, descriptor), -this.arity);
+    }
+
+    // The arguments go through fresh slots first, as each of them may still read the old parameters.
+    private void tailCall(CallExpression call) {
+        if (call.params().size() != this.arity || this.nextSlot + this.arity > MAX_SLOT)
+            throw new Unsupported();
+        this.selfCalls = true;
+        this.unbounded = true;
+        int temps = this.nextSlot;
+        this.nextSlot += this.arity;
+        for (int i = 0; i < this.arity; i++) {
+            if (this.expression(call.params().get(i)) != Kind.INT)
+                throw new Unsupported();
+            this.code.store(temps + i);
+        }
+        for (int i = 0; i < this.arity; i++) {
+            this.code.load(temps + i);
+            this.code.store(this.firstParamSlot + i);
+        }
+        this.checkInterrupt();
+        this.code.jump(Code.GOTO, this.start, 0);
+        this.code.setStack(0);
+    }
+
+    // unbounded code has no budget checkpoints, but a cancelled thread still has to get out of it
+    private void checkInterrupt() {
+        this.code.op2(Code.INVOKESTATIC, this.cw.methodRef(FUNCTION_CLASS, "checkInterrupt", "()V"), 0);
+    }
+
+    private void condition(Expression cond) {
+        // an INT condition is always truthy in the interpreter, only BOOLEAN ones are compiled
+        if (this.expression(cond) != Kind.BOOL)
+            throw new Unsupported();
+    }
+
+    private Kind expression(Expression expr) {
+        if (expr == null)
+            throw new Unsupported();
+        if (expr.getClass() == IntegerLiteral.class) {
+            this.code.pushInt(((IntegerLiteral) expr).value(), this.cw);
+            return Kind.INT;
+        }
+        else if (expr.getClass() == BooleanLiteral.class) {
+            this.code.pushInt(((BooleanLiteral) expr).value() ? 1 : 0, this.cw);
+            return Kind.BOOL;
+        }
+        else if (expr.getClass() == Identifier.class) {
+            Local local = this.locals.get(((Identifier) expr).value());
+            if (local == null)
+                throw new Unsupported();
+            this.code.load(local.slot());
+            return local.kind();
+        }
+        else if (this.isSelfCall(expr)) {
+            this.selfCall(call(expr));
+            return this.assumedResult;
+        }
+        else if (expr.getClass() == PrefixExpression.class) {
+            PrefixExpression prefix = (PrefixExpression) expr;
+            Kind right = this.expression(prefix.right());
+            if (prefix.op().equals("-") && right == Kind.INT) {
+                this.code.op(Code.INEG, 0);
+                return Kind.INT;
+            }
+            if (prefix.op().equals("!") && right == Kind.BOOL) {
+                this.code.pushInt(1, this.cw);
+                this.code.op(Code.IXOR, -1);
+                return Kind.BOOL;
+            }
+            throw new Unsupported();
+        }
+        else if (expr.getClass() == InfixExpression.class) {
+            InfixExpression infix = (InfixExpression) expr;
+            Kind left = this.expression(infix.left());
+            Kind right = this.expression(infix.right());
+            if (left == Kind.INT && right == Kind.INT) {
+                switch (infix.op()) {
+                    case "+" -> this.code.op(Code.IADD, -1);
+                    case "-" -> this.code.op(Code.ISUB, -1);
+                    case "*" -> this.code.op(Code.IMUL, -1);
+                    case "/" -> this.code.op(Code.IDIV, -1);
+                    case "<" -> { return this.compare(Code.IF_ICMPLT); }
+                    case "<=" -> { return this.compare(Code.IF_ICMPLE); }
+                    case ">" -> { return this.compare(Code.IF_ICMPGT); }
+                    case ">=" -> { return this.compare(Code.IF_ICMPGE); }
+                    case "==" -> { return this.compare(Code.IF_ICMPEQ); }
+                    case "!=" -> { return this.compare(Code.IF_ICMPNE); }
+                    default -> throw new Unsupported();
+                }
+                return Kind.INT;
+            }
+            if (left == Kind.BOOL && right == Kind.BOOL) {
+                switch (infix.op()) {
+                    case "==" -> { return this.compare(Code.IF_ICMPEQ); }
+                    case "!=" -> { return this.compare(Code.IF_ICMPNE); }
+                    default -> throw new Unsupported();
+                }
+            }
+            throw new Unsupported();
+        }
+        throw new Unsupported();
+    }
+
+    // Turns the two ints on the stack into 1 or 0 depending on the comparison.
+    private Kind compare(int opcode) {
+        int base = this.code.stack() - 2;
+        Code.Label isTrue = this.code.newLabel();
+        Code.Label end = this.code.newLabel();
+        this.code.jump(opcode, isTrue, -2);
+        this.code.pushInt(0, this.cw);
+        this.code.jump(Code.GOTO, end, 0);
+        this.code.bind(isTrue);
+        this.code.setStack(base);
+        this.code.pushInt(1, this.cw);
+        this.code.bind(end);
+        return Kind.BOOL;
+    }
+}
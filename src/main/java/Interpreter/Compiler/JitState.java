@@ -0,0 +1,34 @@
+package Interpreter.Compiler;
+
+import Parser.AST.Expressions.FunctionLiteral;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Call count and compiled body of one FunctionLiteral, shared by every closure of it.
+ * The call that reaches the threshold compiles the literal; a literal that can't be
+ * compiled is marked failed and never translated again. Calls from several tasks may
+ * all pass the threshold, but only one of them translates the body.
+ */
+public final class JitState {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private volatile CompiledFunction compiled = null;
+    private volatile boolean failed = false;
+
+    /* The compiled body, or null while the literal is still cold or can't be compiled. */
+    public CompiledFunction compiled(FunctionLiteral literal) {
+        CompiledFunction result = this.compiled;
+        if (result != null || this.failed)
+            return result;
+        if (this.calls.incrementAndGet() < JitCompiler.threshold)
+            return null;
+        synchronized (this) {
+            if (this.compiled == null && !this.failed) {
+                this.compiled = JitCompiler.compile(literal);
+                this.failed = this.compiled == null;
+            }
+            return this.compiled;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package Interpreter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Reading side of the binary formats of EntityCodec and Snapshot: big-endian ints,
+ * varints, zigzag varints, counts, byte strings and back references. Nothing read is
+ * trusted. A varint longer than five bytes, a negative count, a count larger than the
+ * rest of the input and a reference to a value not read yet fail with an IOException.
+ * Where the rest of the input is unknown, a count only sizes a collection up to
+ * MAX_PRESIZE and byte strings grow as their bytes arrive, so a corrupt count fails at
+ * the end of the input instead of allocating first.
+ */
+abstract class Decoder {
+
+    static final int MAX_PRESIZE = 1 << 16;
+
+    /* The next byte, 0 to 255; fails with an EOFException at the end of the input. */
+    abstract int readByte() throws IOException;
+
+    /* Reads at least one and at most len bytes into dst, or fails at the end of the input. */
+    abstract int read(byte[] dst, int off, int len) throws IOException;
+
+    /* Number of bytes left in the input, Long.MAX_VALUE if that is not known. */
+    long remaining() {
+        return Long.MAX_VALUE;
+    }
+
+    static EOFException truncated() {
+        return new EOFException("encoded value is truncated");
+    }
+
+    /* Initial capacity of a collection that is going to hold count elements. */
+    static int presize(int count) {
+        return Math.min(count, MAX_PRESIZE);
+    }
+
+    int readInt() throws IOException {
+        int i = 0;
+        for (int k = 0; k < 4; k++)
+            i = (i << 8) | this.readByte();
+        return i;
+    }
+
+    int readVarint() throws IOException {
+        int i = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = this.readByte();
+            i |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return i;
+            if (shift == 28)
+                throw new IOException("varint is too long");
+        }
+    }
+
+    int readZigzag() throws IOException {
+        int i = this.readVarint();
+        return (i >>> 1) ^ -(i & 1);
+    }
+
+    // every element takes at least one byte, so a count can't be larger than the rest of the input
+    int readCount() throws IOException {
+        int count = this.readVarint();
+        if (count < 0)
+            throw new IOException("negative count " + count);
+        if (count > this.remaining())
+            throw truncated();
+        return count;
+    }
+
+    byte[] readBytes(int length) throws IOException {
+        byte[] bytes = new byte[presize(length)];
+        for (int off = 0; off < length; ) {
+            if (off == bytes.length)
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            off += this.read(bytes, off, bytes.length - off);
+        }
+        return bytes;
+    }
+
+    static <T> T ref(List<T> refs, int id) throws IOException {
+        if (id < 0 || id >= refs.size())
+            throw new IOException("reference to unknown value " + id);
+        return refs.get(id);
+    }
+}
@@ -0,0 +1,265 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/*
+ * Binary encoding of script values: null, booleans, integers, strings, arrays and
+ * maps. Values are streamed through a 64 KiB buffer to or from a channel, so neither
+ * side holds the encoded form in memory.
+ *
+ * Every value starts with a tag byte. Integers are zigzag varints, strings a varint
+ * length and their UTF-8 bytes, arrays and maps a varint count and their elements or
+ * pairs. An array holding only integers is packed: one tag, the count and the bare
+ * varints, without a tag per element. Strings, arrays and maps get an id in the order
+ * they are first written, and writing one again only writes a reference to its id,
+ * which keeps shared and cyclic structures intact. Functions, builtins and the other
+ * runtime objects can't be encoded.
+ */
+public final class EntityCodec {
+
+    private static final int MAGIC = 0x4B414543;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte NULL = 0, TRUE = 1, FALSE = 2, INT = 3, STRING = 4, ARRAY = 5, INT_ARRAY = 6,
+            MAP = 7, REF = 8;
+
+    private EntityCodec() {}
+
+    /* Writes the value to the channel and returns the number of bytes written. */
+    public static long write(Entity entity, WritableByteChannel channel) throws IOException {
+        Writer out = new Writer(channel);
+        out.writeInt(MAGIC);
+        out.writeVarint(VERSION);
+        try {
+            out.writeEntity(entity);
+        } catch (StackOverflowError e) {
+            throw new IOException("value is nested too deeply to encode", e);
+        }
+        out.flush();
+        return out.written;
+    }
+
+    /* Reads one value written by write() from the channel. */
+    public static Entity read(ReadableByteChannel channel) throws IOException {
+        Reader in = new Reader(channel);
+        if (in.readInt() != MAGIC)
+            throw new IOException("not an encoded value");
+        if (in.readVarint() != VERSION)
+            throw new IOException("encoded by an incompatible version");
+        try {
+            return in.readEntity();
+        } catch (RuntimeException e) {
+            throw new IOException("corrupt encoding: " + e, e);
+        } catch (StackOverflowError e) {
+            throw new IOException("encoded value is nested too deeply", e);
+        }
+    }
+
+    public static long write(Entity entity, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            return write(entity, channel);
+        }
+    }
+
+    public static Entity read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    private static final class Writer {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        private final Map<Entity, Integer> refs = new IdentityHashMap<>();
+        long written = 0;
+
+        Writer(WritableByteChannel pChannel) {
+            this.channel = pChannel;
+        }
+
+        void flush() throws IOException {
+            this.buf.flip();
+            while (this.buf.hasRemaining())
+                this.written += this.channel.write(this.buf);
+            this.buf.clear();
+        }
+
+        void writeByte(int b) throws IOException {
+            if (!this.buf.hasRemaining())
+                this.flush();
+            this.buf.put((byte) b);
+        }
+
+        void writeInt(int i) throws IOException {
+            for (int shift = 24; shift >= 0; shift -= 8)
+                this.writeByte(i >>> shift);
+        }
+
+        void writeVarint(int i) throws IOException {
+            // a varint takes at most 5 bytes
+            if (this.buf.remaining() < 5)
+                this.flush();
+            while ((i & ~0x7F) != 0) {
+                this.buf.put((byte) ((i & 0x7F) | 0x80));
+                i >>>= 7;
+            }
+            this.buf.put((byte) i);
+        }
+
+        void writeZigzag(int i) throws IOException {
+            this.writeVarint((i << 1) ^ (i >> 31));
+        }
+
+        // writes a reference and returns true if the value was written before, registers it otherwise
+        boolean writeRef(Entity entity) throws IOException {
+            Integer id = this.refs.get(entity);
+            if (id != null) {
+                this.writeByte(REF);
+                this.writeVarint(id);
+                return true;
+            }
+            this.refs.put(entity, this.refs.size());
+            return false;
+        }
+
+        void writeEntity(Entity entity) throws IOException {
+            if (entity == null || entity.getClass() == NullObj.class)
+                this.writeByte(NULL);
+            else if (entity.getClass() == BooleanObj.class)
+                this.writeByte(((BooleanObj) entity).value() ? TRUE : FALSE);
+            else if (entity.getClass() == IntegerObj.class) {
+                this.writeByte(INT);
+                this.writeZigzag(((IntegerObj) entity).value());
+            }
+            else if (this.writeRef(entity))
+                return;
+            else if (entity.getClass() == StringObj.class) {
+                this.writeByte(STRING);
+                byte[] bytes = ((StringObj) entity).value().getBytes(StandardCharsets.UTF_8);
+                this.writeVarint(bytes.length);
+                for (int off = 0; off < bytes.length; ) {
+                    if (!this.buf.hasRemaining())
+                        this.flush();
+                    int n = Math.min(this.buf.remaining(), bytes.length - off);
+                    this.buf.put(bytes, off, n);
+                    off += n;
+                }
+            }
+            else if (entity.getClass() == MappedArrayObj.class) {
+                MappedArrayObj mapped = (MappedArrayObj) entity;
+                int size = mapped.value().size();
+                this.writeByte(INT_ARRAY);
+                this.writeVarint(size);
+                for (int i = 0; i < size; i++)
+                    this.writeZigzag(mapped.getInt(i));
+            }
+            else if (entity.getClass() == ArrayObj.class) {
+                List<Entity> elements = ((ArrayObj) entity).value();
+                boolean ints = !elements.isEmpty();
+                for (int i = 0; ints && i < elements.size(); i++)
+                    ints = elements.get(i).getClass() == IntegerObj.class;
+                this.writeByte(ints ? INT_ARRAY : ARRAY);
+                this.writeVarint(elements.size());
+                for (Entity element: elements) {
+                    if (ints)
+                        this.writeZigzag(((IntegerObj) element).value());
+                    else this.writeEntity(element);
+                }
+            }
+            else if (entity.getClass() == MapObj.class) {
+                Map<Entity, Entity> pairs = ((MapObj) entity).value();
+                this.writeByte(MAP);
+                this.writeVarint(pairs.size());
+                for (Map.Entry<Entity, Entity> pair: pairs.entrySet()) {
+                    this.writeEntity(pair.getKey());
+                    this.writeEntity(pair.getValue());
+                }
+            }
+            else throw new IOException(entity.Type() + " can't be encoded");
+        }
+    }
+
+    private static final class Reader extends Decoder {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+        private final List<Entity> refs = new ArrayList<>();
+
+        Reader(ReadableByteChannel pChannel) {
+            this.channel = pChannel;
+        }
+
+        // makes at least n (at most BUFFER_SIZE) bytes available, or fails at the end of the channel
+        void require(int n) throws IOException {
+            if (this.buf.remaining() >= n)
+                return;
+            this.buf.compact();
+            while (this.buf.position() < n) {
+                if (this.channel.read(this.buf) < 0)
+                    throw truncated();
+            }
+            this.buf.flip();
+        }
+
+        @Override
+        int readByte() throws IOException {
+            this.require(1);
+            return this.buf.get() & 0xFF;
+        }
+
+        @Override
+        int read(byte[] dst, int off, int len) throws IOException {
+            this.require(1);
+            int n = Math.min(this.buf.remaining(), len);
+            this.buf.get(dst, off, n);
+            return n;
+        }
+
+        Entity readEntity() throws IOException {
+            int tag = this.readByte();
+            switch (tag) {
+                case NULL -> { return Interpreter.NULL; }
+                case TRUE -> { return Interpreter.TRUE; }
+                case FALSE -> { return Interpreter.FALSE; }
+                case INT -> { return new IntegerObj(this.readZigzag()); }
+                case REF -> { return ref(this.refs, this.readVarint()); }
+                case STRING -> {
+                    byte[] bytes = this.readBytes(this.readCount());
+                    StringObj string = new StringObj(new String(bytes, StandardCharsets.UTF_8));
+                    this.refs.add(string);
+                    return string;
+                }
+                case ARRAY, INT_ARRAY -> {
+                    int size = this.readCount();
+                    List<Entity> elements = new ArrayList<>(presize(size));
+                    ArrayObj array = new ArrayObj(elements);
+                    this.refs.add(array);
+                    for (int i = 0; i < size; i++)
+                        elements.add(tag == INT_ARRAY ? new IntegerObj(this.readZigzag()) : this.readEntity());
+                    return array;
+                }
+                case MAP -> {
+                    int size = this.readCount();
+                    Map<Entity, Entity> pairs = new HashMap<>(presize(size) * 2);
+                    MapObj map = new MapObj(pairs);
+                    this.refs.add(map);
+                    for (int i = 0; i < size; i++)
+                        pairs.put(this.readEntity(), this.readEntity());
+                    return map;
+                }
+                default -> throw new IOException("unknown tag " + tag);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package Interpreter;
+
+import Parser.AST.Statement;
+import Parser.AST.Statements.*;
+import jdk.jfr.*;
+
+/*
+ * Java Flight Recorder events for Karaoke work. They are switched on and off through
+ * the usual JFR settings (e.g. karaoke.GuestCall#enabled=true in a .jfc file), and
+ * guest calls also honour a duration threshold. Creating an event on every call would
+ * cost even while nothing is recorded, so the interpreter reads the flags below, which
+ * are refreshed whenever a recording starts or stops, before it touches an event.
+ */
+public final class Events {
+
+    public static volatile boolean parseEnabled = false;
+    public static volatile boolean statementEnabled = false;
+    public static volatile boolean callEnabled = false;
+    public static volatile boolean builtinEnabled = false;
+
+    private Events() {}
+
+    public static void register() {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                refresh();
+            }
+        });
+        // the listener only hears about recordings started after it was added
+        if (FlightRecorder.isInitialized())
+            refresh();
+    }
+
+    private static void refresh() {
+        parseEnabled = EventType.getEventType(Parse.class).isEnabled();
+        statementEnabled = EventType.getEventType(TopLevelStatement.class).isEnabled();
+        callEnabled = EventType.getEventType(GuestCall.class).isEnabled();
+        builtinEnabled = EventType.getEventType(BuiltinCall.class).isEnabled();
+    }
+
+    static int line(Statement stmt) {
+        if (stmt instanceof LetStatement s)
+            return s.tok().line();
+        else if (stmt instanceof ExpressionStatement s)
+            return s.tok().line();
+        else if (stmt instanceof ReturnStatement s)
+            return s.tok().line();
+        else if (stmt instanceof AssignStatement s)
+            return s.tok().line();
+        else if (stmt instanceof WhileStatement s)
+            return s.tok().line();
+        else if (stmt instanceof ForStatement s)
+            return s.tok().line();
+        else if (stmt instanceof YieldStatement s)
+            return s.tok().line();
+        return 0;
+    }
+
+    @Name("karaoke.Parse")
+    @Label("Parse Script")
+    @Category("Karaoke")
+    @Description("Lexing and parsing of one script or REPL line")
+    public static final class Parse extends Event {
+        @Label("Source Length")
+        @Description("Length of the source in characters")
+        public int sourceLength;
+
+        @Label("Statements")
+        public int statements;
+
+        @Label("Errors")
+        public int errors;
+    }
+
+    @Name("karaoke.TopLevelStatement")
+    @Label("Top-Level Statement")
+    @Category("Karaoke")
+    @Description("Evaluation of one statement of a program")
+    public static final class TopLevelStatement extends Event {
+        @Label("Kind")
+        public String kind;
+
+        @Label("Line")
+        public int line;
+    }
+
+    @Name("karaoke.GuestCall")
+    @Label("Guest Function Call")
+    @Category("Karaoke")
+    @Description("Call of a function written in Karaoke")
+    @Threshold("1 ms")
+    public static final class GuestCall extends Event {
+        @Label("Function")
+        public String function;
+
+        @Label("Position")
+        public String position;
+
+        @Label("Arguments")
+        public int arguments;
+    }
+
+    @Name("karaoke.BuiltinCall")
+    @Label("Builtin Call")
+    @Category("Karaoke")
+    @Description("Invocation of a builtin function, without the evaluation of its arguments")
+    @Threshold("1 ms")
+    public static final class BuiltinCall extends Event {
+        @Label("Builtin")
+        public String builtin;
+
+        @Label("Arguments")
+        public int arguments;
+    }
+}
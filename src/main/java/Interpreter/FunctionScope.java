@@ -0,0 +1,194 @@
+package Interpreter;
+
+import Interpreter.Compiler.JitState;
+import Parser.AST.Expression;
+import Parser.AST.Expressions.*;
+import Parser.AST.Node;
+import Parser.AST.Statement;
+import Parser.AST.Statements.*;
+
+import java.util.*;
+
+/*
+ * Free-variable analysis of one FunctionLiteral, computed on first use and held by the
+ * FunctionSite the Linker puts in place of the literal. The free variables are the
+ * names the body (or any function nested in it) reads without them being parameters;
+ * a var in the body may still read the outer binding before it is declared, so locals
+ * are not subtracted. The declaration counts of the body itself tell the interpreter
+ * whether a frame of this function can bind a name again after a closure has copied
+ * it: a var inside a loop, a loop variable, an assignment and an assignment made by a
+ * nested function all count as rebinding. A body holding a yield outside of nested
+ * functions makes it a generator function. The scope also keeps the JIT state of the
+ * literal, shared by all of its closures.
+ */
+public final class FunctionScope {
+
+    // scope of the environment holding the copied variables of a closure, which is never bound to
+    static final FunctionScope CAPTURED = new FunctionScope(List.of(), null);
+
+    private final List<Identifier> parameters;
+    private final BlockStatement body;
+    private Map<String, Integer> declarations;
+    private String[] assigned;
+    private boolean generator;
+    private volatile String[] free;
+    private final JitState jit = new JitState();
+
+    public FunctionScope(List<Identifier> pParameters, BlockStatement pBody) {
+        this.parameters = pParameters;
+        this.body = pBody;
+    }
+
+    List<Identifier> parameters() {
+        return this.parameters;
+    }
+
+    BlockStatement body() {
+        return this.body;
+    }
+
+    String[] free() {
+        String[] result = this.free;
+        if (result == null) {
+            this.analyze();
+            result = this.free;
+        }
+        return result;
+    }
+
+    boolean declares(String name) {
+        this.free();
+        return this.declarations.containsKey(name);
+    }
+
+    JitState jit() {
+        return this.jit;
+    }
+
+    boolean generator() {
+        this.free();
+        return this.generator;
+    }
+
+    boolean rebinds(String name) {
+        this.free();
+        return this.declarations.getOrDefault(name, 0) > 1;
+    }
+
+    private void analyze() {
+        Collector collector = new Collector();
+        for (Identifier param: this.parameters)
+            collector.declare(param.value());
+        collector.collect(this.body);
+        for (Identifier param: this.parameters) {
+            collector.referenced.remove(param.value());
+            collector.assigned.remove(param.value());
+        }
+        this.declarations = collector.declared;
+        this.assigned = collector.assigned.toArray(new String[0]);
+        this.generator = collector.yields;
+        this.free = collector.referenced.toArray(new String[0]);
+    }
+
+    private static final class Collector {
+        final Map<String, Integer> declared = new HashMap<>(0);
+        final Set<String> referenced = new LinkedHashSet<>();
+        final Set<String> assigned = new LinkedHashSet<>();
+        int loopDepth = 0;
+        boolean yields = false;
+
+        void declare(String name) {
+            this.declared.merge(name, this.loopDepth > 0 ? 2 : 1, Integer::sum);
+        }
+
+        void rebind(String name) {
+            this.declared.merge(name, 2, Integer::sum);
+            this.assigned.add(name);
+        }
+
+        void collect(Node node) {
+            if (node == null)
+                return;
+            if (node.getClass() == Identifier.class)
+                this.referenced.add(((Identifier) node).value());
+            else if (node.getClass() == BlockStatement.class) {
+                for (Statement stmt: ((BlockStatement) node).statements())
+                    this.collect(stmt);
+            }
+            else if (node.getClass() == ExpressionStatement.class)
+                this.collect(((ExpressionStatement) node).value());
+            else if (node.getClass() == ReturnStatement.class)
+                this.collect(((ReturnStatement) node).value());
+            else if (node.getClass() == YieldStatement.class) {
+                this.yields = true;
+                this.collect(((YieldStatement) node).value());
+            }
+            else if (node.getClass() == LetStatement.class) {
+                this.declare(((LetStatement) node).name().value());
+                this.collect(((LetStatement) node).value());
+            }
+            else if (node.getClass() == AssignStatement.class) {
+                this.referenced.add(((AssignStatement) node).name().value());
+                this.rebind(((AssignStatement) node).name().value());
+                this.collect(((AssignStatement) node).value());
+            }
+            else if (node.getClass() == WhileStatement.class) {
+                this.loopDepth++;
+                this.collect(((WhileStatement) node).condition());
+                this.collect(((WhileStatement) node).body());
+                this.loopDepth--;
+            }
+            else if (node.getClass() == ForStatement.class) {
+                this.collect(((ForStatement) node).iterable());
+                this.collect(((ForStatement) node).end());
+                this.loopDepth++;
+                this.declare(((ForStatement) node).variable().value());
+                this.collect(((ForStatement) node).body());
+                this.loopDepth--;
+            }
+            else if (node.getClass() == ArrayLiteral.class) {
+                for (Expression element: ((ArrayLiteral) node).elements())
+                    this.collect(element);
+            }
+            else if (node.getClass() == MapLiteral.class) {
+                for (Map.Entry<Expression, Expression> pair: ((MapLiteral) node).pairs().entrySet()) {
+                    this.collect(pair.getKey());
+                    this.collect(pair.getValue());
+                }
+            }
+            else if (node.getClass() == IndexExpression.class) {
+                this.collect(((IndexExpression) node).left());
+                this.collect(((IndexExpression) node).index());
+            }
+            else if (node.getClass() == PrefixExpression.class)
+                this.collect(((PrefixExpression) node).right());
+            else if (node.getClass() == InfixExpression.class) {
+                this.collect(((InfixExpression) node).left());
+                this.collect(((InfixExpression) node).right());
+            }
+            else if (node.getClass() == IfExpression.class) {
+                this.collect(((IfExpression) node).condition());
+                this.collect(((IfExpression) node).consequence());
+                this.collect(((IfExpression) node).alternative());
+            }
+            else if (node.getClass() == CallExpression.class) {
+                this.collect(((CallExpression) node).function());
+                for (Expression param: ((CallExpression) node).params())
+                    this.collect(param);
+            }
+            else if (node.getClass() == CallSite.class)
+                this.collect(((CallSite) node).call());
+            else if (node.getClass() == InlinedCall.class)
+                this.collect(((InlinedCall) node).call().call());
+            // a nested function declares nothing in this frame, but its free variables are read
+            // through it, and the ones it assigns may change under any closure copying them
+            else if (node.getClass() == FunctionSite.class || node.getClass() == FunctionLiteral.class) {
+                FunctionScope nested = node.getClass() == FunctionSite.class ? ((FunctionSite) node).scope()
+                        : new FunctionScope(((FunctionLiteral) node).parameters(), ((FunctionLiteral) node).body());
+                Collections.addAll(this.referenced, nested.free());
+                for (String name: nested.assigned)
+                    this.rebind(name);
+            }
+        }
+    }
+}
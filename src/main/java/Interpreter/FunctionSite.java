@@ -0,0 +1,61 @@
+package Interpreter;
+
+import Parser.AST.Expression;
+import Parser.AST.Expressions.FunctionLiteral;
+
+/*
+ * A FunctionLiteral together with the FunctionScope of its body, put in place of the
+ * literal by the Linker. Every closure made from it shares the one analysis and JIT
+ * state. Like CallSite it is no record, so the scope stays out of tree comparisons.
+ */
+public final class FunctionSite implements Expression {
+
+    private final FunctionLiteral literal;
+    private final FunctionScope scope;
+
+    public FunctionSite(FunctionLiteral pLiteral) {
+        this(pLiteral, new FunctionScope(pLiteral.parameters(), pLiteral.body()));
+    }
+
+    /* With the scope already made for the body of the literal, as a restored snapshot does. */
+    FunctionSite(FunctionLiteral pLiteral, FunctionScope pScope) {
+        this.literal = pLiteral;
+        this.scope = pScope;
+    }
+
+    public FunctionLiteral literal() {
+        return this.literal;
+    }
+
+    public FunctionScope scope() {
+        return this.scope;
+    }
+
+    @Override
+    public void expressionNode() { }
+
+    @Override
+    public String tokenLiteral() {
+        return this.literal.tokenLiteral();
+    }
+
+    @Override
+    public int length() {
+        return this.literal.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return this.literal.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return this.literal.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return this.literal.toString();
+    }
+}
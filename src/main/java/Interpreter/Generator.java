@@ -0,0 +1,131 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.EnclosedEnvironment;
+import Interpreter.ObjSystem.Entity;
+import Interpreter.ObjSystem.ErrorMsg;
+import Interpreter.ObjSystem.FunctionObj;
+import Interpreter.ObjSystem.IteratorObj;
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Body of a generator function, run as a coroutine on a thread of its own. Calling a
+ * generator function only binds the arguments and returns an Iterator; the thread
+ * starts on the first next(), and every yield hands one value over and parks it
+ * until the consumer asks for the next one, so the consumer and the body never run
+ * at the same time and the frame stays suspended in between. The end of the body, a
+ * return included, ends the sequence, an error is the last element. Like the NULL
+ * that next() returns at the end, a yielded null stops a for loop.
+ *
+ * The thread holds the generator but not its Iterator, so an Iterator dropped before
+ * the body finished is found by the Cleaner, which interrupts the parked thread and
+ * cancels the budget of the body, if it has one; the body then unwinds through the
+ * normal error path.
+ */
+final class Generator implements IteratorObj.Source {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ThreadLocal<Generator> current = new ThreadLocal<>();
+    // marks the end of the body in the hand-over queue
+    private static final Entity END = new ErrorMsg("end of generator");
+
+    private final FunctionObj fn;
+    private final EnclosedEnvironment frame;
+    private final Budget budget;
+    private final SynchronousQueue<Entity> values = new SynchronousQueue<>();
+    private final SynchronousQueue<Boolean> demand = new SynchronousQueue<>();
+    private volatile Thread thread;
+    private boolean finished = false;
+    private volatile boolean cancelled = false;
+
+    private Generator(FunctionObj pFn, EnclosedEnvironment pFrame, Budget pBudget) {
+        this.fn = pFn;
+        this.frame = pFrame;
+        this.budget = pBudget;
+    }
+
+    static IteratorObj start(FunctionObj fn, EnclosedEnvironment frame) {
+        Budget parent = Budget.current();
+        Budget.cancellable();
+        Generator generator = new Generator(fn, frame, parent != null ? parent.fork() : null);
+        IteratorObj iterator = new IteratorObj(generator);
+        Interpreter.cleaner.register(iterator, generator::cancel);
+        return iterator;
+    }
+
+    /* Hands the value to the consumer of the generator running on this thread and waits to be resumed. */
+    static ErrorMsg yield(Entity value) {
+        Generator generator = current.get();
+        if (generator == null)
+            return new ErrorMsg("yield outside of a generator function");
+        try {
+            generator.values.put(value);
+            generator.demand.take();
+            return null;
+        } catch (InterruptedException e) {
+            // later checkpoints of a body without a budget look at the flag
+            Thread.currentThread().interrupt();
+            return new ErrorMsg("generator cancelled");
+        }
+    }
+
+    // the first call starts the thread, and every call waits for its own value
+    @Override
+    public synchronized Entity next() {
+        if (this.finished)
+            return null;
+        try {
+            if (this.thread == null) {
+                this.thread = new Thread(null, this::run, "karaoke-generator-" + threadCount.incrementAndGet(),
+                        Tasks.stackSize);
+                this.thread.setDaemon(true);
+                this.thread.start();
+            }
+            else this.demand.put(Boolean.TRUE);
+            Entity value = this.values.take();
+            if (value == END) {
+                this.finished = true;
+                return null;
+            }
+            return value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.finished = true;
+            this.cancel();
+            return new ErrorMsg("interrupted while waiting for a generator");
+        }
+    }
+
+    private void run() {
+        Budget previous = Budget.bind(this.budget);
+        current.set(this);
+        Entity result;
+        try {
+            result = Interpreter.eval(this.fn.body(), this.frame);
+        } catch (StackOverflowError e) {
+            result = new ErrorMsg("stack overflow - guest call depth exceeds the Java stack");
+        } finally {
+            // tasks spawned by the body must not outlive it
+            Tasks.cancelAll();
+            current.remove();
+            Budget.bind(previous);
+        }
+        if (this.cancelled)
+            return;
+        try {
+            this.values.put(result != null && result.getClass() == ErrorMsg.class ? result : END);
+        } catch (InterruptedException ignored) {
+            // cancelled while handing over the end
+        }
+    }
+
+    private void cancel() {
+        this.cancelled = true;
+        if (this.budget != null)
+            this.budget.cancel();
+        Thread running = this.thread;
+        if (running != null)
+            running.interrupt();
+    }
+}
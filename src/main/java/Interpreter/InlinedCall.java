@@ -0,0 +1,81 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.Entity;
+import Interpreter.ObjSystem.FunctionObj;
+import Parser.AST.Expression;
+import Parser.AST.Expressions.FunctionLiteral;
+
+/*
+ * A call the Inliner replaced by the body of its callee, with the arguments put in
+ * place of the parameters. Before the body runs, the guard checks that the name still
+ * refers to the function that was inlined, otherwise the original call is made.
+ * Literals are compared by their parameters and body, so an equal function declared
+ * again is still accepted; the last literal found equal is remembered, and a hit
+ * usually costs one identity comparison. It is no record, since the remembered
+ * literal must not take part in comparing syntax trees.
+ */
+public final class InlinedCall implements Expression {
+
+    private final CallSite call;
+    private final FunctionLiteral callee;
+    private final Expression body;
+    private FunctionLiteral verified;
+
+    public InlinedCall(CallSite pCall, FunctionLiteral pCallee, Expression pBody) {
+        this.call = pCall;
+        this.callee = pCallee;
+        this.body = pBody;
+    }
+
+    public CallSite call() {
+        return this.call;
+    }
+
+    public FunctionLiteral callee() {
+        return this.callee;
+    }
+
+    public Expression body() {
+        return this.body;
+    }
+
+    boolean holds(Entity func) {
+        if (func == null || func.getClass() != FunctionObj.class)
+            return false;
+        FunctionLiteral literal = ((FunctionObj) func).literal();
+        if (literal == this.verified)
+            return true;
+        if (!literal.parameters().equals(this.callee.parameters()) || !literal.body().equals(this.callee.body()))
+            return false;
+        this.verified = literal;
+        return true;
+    }
+
+    @Override
+    public void expressionNode() { }
+
+    @Override
+    public String tokenLiteral() {
+        return this.call.tokenLiteral();
+    }
+
+    @Override
+    public int length() {
+        return this.call.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return this.call.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return this.call.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return this.call.toString();
+    }
+}
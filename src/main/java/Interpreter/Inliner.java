@@ -0,0 +1,170 @@
+package Interpreter;
+
+import Parser.AST.Expression;
+import Parser.AST.Expressions.*;
+import Parser.AST.Statement;
+import Parser.AST.Statements.*;
+
+import java.util.*;
+
+/*
+ * Replaces calls of small top-level functions by their body while the Linker walks a
+ * program. A candidate is declared by a top-level `var name = fn(...)` whose body is
+ * one expression, or one return of it, built only from its own parameters, literals
+ * and prefix, infix and index operators. Such a body reads nothing from its closure,
+ * so it cannot be recursive and means the same wherever it is placed. A later call of
+ * the name whose arguments are literals or identifiers becomes an InlinedCall holding
+ * the body with the arguments put in place of the parameters.
+ *
+ * An InlinedCall still looks the name up and falls back to the original call unless
+ * it is bound to a function with exactly that body, which covers calls running before
+ * the declaration, a name that is rebound later (even from the REPL) and locals
+ * shadowing it. Reading an identifier argument can only fail by it being unbound, and
+ * that has to be the first failure of the call, as when the arguments are evaluated up
+ * front: identifier arguments are only substituted if the body reads each of them in
+ * argument order before applying any operator. While the profiler, metrics, call
+ * events or a budget are active, an InlinedCall makes the original call, so their
+ * frames, counts and limits don't depend on what was inlined. A body is at most
+ * MAX_BODY nodes and a program grows by at most BUDGET nodes; -Dkaraoke.inline=false
+ * turns inlining off.
+ */
+public final class Inliner {
+
+    public static boolean enabled = !"false".equals(System.getProperty("karaoke.inline"));
+
+    static final int MAX_BODY = 16;
+    static final int BUDGET = 4096;
+
+    private final Map<String, FunctionLiteral> candidates = new HashMap<>(0);
+    private int budget = BUDGET;
+
+    // Only the latest top-level declaration of a name is inlined into the statements after it.
+    void declare(Statement stmt) {
+        if (stmt.getClass() == LetStatement.class) {
+            LetStatement let = (LetStatement) stmt;
+            if (let.value() != null && let.value().getClass() == FunctionSite.class
+                    && candidate(((FunctionSite) let.value()).literal()) != null)
+                this.candidates.put(let.name().value(), ((FunctionSite) let.value()).literal());
+            else this.candidates.remove(let.name().value());
+        }
+        else if (stmt.getClass() == AssignStatement.class)
+            this.candidates.remove(((AssignStatement) stmt).name().value());
+    }
+
+    // The expression a candidate evaluates to, or null if the literal is not one.
+    private static Expression candidate(FunctionLiteral literal) {
+        List<Statement> stmts = literal.body().statements();
+        if (stmts.size() != 1)
+            return null;
+        Expression value;
+        if (stmts.get(0).getClass() == ReturnStatement.class)
+            value = ((ReturnStatement) stmts.get(0)).value();
+        else if (stmts.get(0).getClass() == ExpressionStatement.class)
+            value = ((ExpressionStatement) stmts.get(0)).value();
+        else return null;
+        Set<String> params = new HashSet<>();
+        for (Identifier param: literal.parameters()) {
+            if (!params.add(param.value()))
+                return null;
+        }
+        int size = size(value, params);
+        return size > 0 && size <= MAX_BODY ? value : null;
+    }
+
+    // Node count of a body, or -1 if it holds anything but parameters, literals and operators.
+    private static int size(Expression expr, Set<String> params) {
+        if (expr == null)
+            return -1;
+        if (expr.getClass() == Identifier.class)
+            return params.contains(((Identifier) expr).value()) ? 1 : -1;
+        if (expr.getClass() == IntegerLiteral.class || expr.getClass() == BooleanLiteral.class
+                || expr.getClass() == StringLiteral.class)
+            return 1;
+        if (expr.getClass() == PrefixExpression.class) {
+            int right = size(((PrefixExpression) expr).right(), params);
+            return right < 0 ? -1 : right + 1;
+        }
+        int left, right;
+        if (expr.getClass() == InfixExpression.class) {
+            left = size(((InfixExpression) expr).left(), params);
+            right = size(((InfixExpression) expr).right(), params);
+        }
+        else if (expr.getClass() == IndexExpression.class) {
+            left = size(((IndexExpression) expr).left(), params);
+            right = size(((IndexExpression) expr).index(), params);
+        }
+        else return -1;
+        return left < 0 || right < 0 ? -1 : left + right + 1;
+    }
+
+    // The inlined call, or null if the call can't be inlined.
+    Expression inline(CallExpression call) {
+        if (!enabled || call.function().getClass() != Identifier.class)
+            return null;
+        FunctionLiteral callee = this.candidates.get(((Identifier) call.function()).value());
+        if (callee == null || callee.parameters().size() != call.params().size())
+            return null;
+        Expression body = candidate(callee);
+        Map<String, Expression> args = new HashMap<>();
+        List<String> unbound = new ArrayList<>(0);
+        for (int i = 0; i < call.params().size(); i++) {
+            Expression arg = call.params().get(i);
+            if (arg.getClass() == Identifier.class)
+                unbound.add(callee.parameters().get(i).value());
+            else if (arg.getClass() != IntegerLiteral.class && arg.getClass() != BooleanLiteral.class
+                    && arg.getClass() != StringLiteral.class)
+                return null;
+            args.put(callee.parameters().get(i).value(), arg);
+        }
+        int size = size(body, args.keySet());
+        if (size > this.budget || readsInOrder(body, unbound, 0) != unbound.size())
+            return null;
+        this.budget -= size;
+        return new InlinedCall(new CallSite(call), callee, substitute(body, args));
+    }
+
+    /*
+     * Walks the body in evaluation order, counting how many of the parameters bound to
+     * identifiers have been read so far; returns -1 once one is read out of order or an
+     * operator is applied before all of them are read.
+     */
+    private static int readsInOrder(Expression expr, List<String> params, int read) {
+        if (read < 0)
+            return -1;
+        if (expr.getClass() == Identifier.class) {
+            int index = params.indexOf(((Identifier) expr).value());
+            if (index < read)
+                return read;
+            return index == read ? read + 1 : -1;
+        }
+        if (expr.getClass() == PrefixExpression.class)
+            read = readsInOrder(((PrefixExpression) expr).right(), params, read);
+        else if (expr.getClass() == InfixExpression.class)
+            read = readsInOrder(((InfixExpression) expr).right(), params,
+                    readsInOrder(((InfixExpression) expr).left(), params, read));
+        else if (expr.getClass() == IndexExpression.class)
+            read = readsInOrder(((IndexExpression) expr).index(), params,
+                    readsInOrder(((IndexExpression) expr).left(), params, read));
+        else return read;
+        return read == params.size() ? read : -1;
+    }
+
+    private static Expression substitute(Expression expr, Map<String, Expression> args) {
+        if (expr.getClass() == Identifier.class)
+            return args.get(((Identifier) expr).value());
+        if (expr.getClass() == PrefixExpression.class) {
+            PrefixExpression prefix = (PrefixExpression) expr;
+            return new PrefixExpression(prefix.tok(), prefix.op(), substitute(prefix.right(), args));
+        }
+        if (expr.getClass() == InfixExpression.class) {
+            InfixExpression infix = (InfixExpression) expr;
+            return new InfixExpression(infix.tok(), substitute(infix.left(), args), infix.op(),
+                    substitute(infix.right(), args));
+        }
+        if (expr.getClass() == IndexExpression.class) {
+            IndexExpression index = (IndexExpression) expr;
+            return new IndexExpression(index.tok(), substitute(index.left(), args), substitute(index.index(), args));
+        }
+        return expr;
+    }
+}
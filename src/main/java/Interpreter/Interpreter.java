@@ -1,24 +1,61 @@
 package Interpreter;
 
+import Interpreter.Compiler.*;
 import Interpreter.ObjSystem.*;
 import Parser.AST.Expressions.*;
 import Parser.AST.Statements.*;
 import Parser.AST.*;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.*;
 
 public abstract class Interpreter {
 
     public static NullObj NULL = new NullObj();
-    static BooleanObj TRUE = new BooleanObj(true);
-    static BooleanObj FALSE = new BooleanObj(false);
+    // returned by a return statement, the value itself is left in the frame of the function
+    static final ReturnValue RETURN = new ReturnValue(NULL);
+    public static BooleanObj TRUE = new BooleanObj(true);
+    public static BooleanObj FALSE = new BooleanObj(false);
     static Map<String, Entity> builtins = new HashMap<>(0);
+    // releases what objects dropped before they were finished still hold
+    static final Cleaner cleaner = Cleaner.create();
 
     public static void init() {
         initBuiltIns();
+        Metrics.register();
+        Events.register();
+    }
+
+    public static Entity eval(Node pNode, Environment env, Budget budget) {
+        Budget previous = Budget.bind(budget);
+        budget.start();
+        try {
+            return evalGuarded(pNode, env);
+        } finally {
+            Budget.bind(previous);
+        }
+    }
+
+    /* Like eval(), but a Java stack overflow in deep guest recursion fails with an error. */
+    public static Entity evalGuarded(Node pNode, Environment env) {
+        try {
+            return eval(pNode, env);
+        } catch (StackOverflowError e) {
+            return newError("stack overflow - guest call depth exceeds the Java stack");
+        }
     }
 
     public static Entity eval(Node pNode, Environment env) {
+        if (Metrics.enabled)
+            Metrics.nodeEvaluated(pNode.getClass());
 
         // Whole program
         if (pNode.getClass() == Program.class)
@@ -37,7 +74,17 @@ public abstract class Interpreter {
             Entity val = eval(((ReturnStatement) pNode).value(), env);
             if (isError(val))
                 return val;
-            return new ReturnValue(val);
+            env.setReturnValue(val);
+            return RETURN;
+        }
+
+        // Yield statements
+        else if (pNode.getClass() == YieldStatement.class) {
+            Entity val = eval(((YieldStatement) pNode).value(), env);
+            if (isError(val))
+                return val;
+            ErrorMsg error = Generator.yield(val);
+            return error != null ? error : NULL;
         }
 
         // Integer Literals
@@ -54,17 +101,25 @@ public abstract class Interpreter {
 
         // Array Literals
         else if (pNode.getClass() == ArrayLiteral.class) {
-            List<Entity> elements = evalExpressionsList(((ArrayLiteral) pNode).elements(), env);
-            if (elements.size() == 1 && isError(elements.get(0)))
-                return elements.get(0);
+            List<Entity> elements = new ArrayList<>(((ArrayLiteral) pNode).elements().size());
+            Entity error = evalExpressionsList(((ArrayLiteral) pNode).elements(), env, elements);
+            if (error != null)
+                return error;
+            ErrorMsg exceeded = charge(elements.size() + 1);
+            if (exceeded != null)
+                return exceeded;
             return new ArrayObj(elements);
         }
 
         // Map Literals
         else if (pNode.getClass() == MapLiteral.class) {
-            Map<Entity, Entity> elements = evalMapPairs(((MapLiteral) pNode).pairs(), env);
-            if (elements.size() == 1 && isError(elements.get(NULL)))
-                return elements.get(NULL);
+            Map<Entity, Entity> elements = new HashMap<>(0);
+            Entity error = evalMapPairs(((MapLiteral) pNode).pairs(), env, elements);
+            if (error != null)
+                return error;
+            ErrorMsg exceeded = charge(elements.size() + 1);
+            if (exceeded != null)
+                return exceeded;
             return new MapObj(elements);
         }
 
@@ -110,31 +165,50 @@ public abstract class Interpreter {
         }
         // Let Statements
         else if (pNode.getClass() == LetStatement.class) {
-            Entity val = eval(((LetStatement) pNode).value(), env);
+            Entity val;
+            if (((LetStatement) pNode).value().getClass() == FunctionSite.class)
+                val = evalFunctionLiteral((FunctionSite) ((LetStatement) pNode).value(), env, ((LetStatement) pNode).name().value());
+            else val = eval(((LetStatement) pNode).value(), env);
             if (isError(val))
                 return val;
             env.set(((LetStatement) pNode).name().value(), val);
         }
+        // Assign Statements
+        else if (pNode.getClass() == AssignStatement.class) {
+            Entity val = eval(((AssignStatement) pNode).value(), env);
+            if (isError(val))
+                return val;
+            if (!env.assign(((AssignStatement) pNode).name().value(), val))
+                return newError("Identifier not found: %s", ((AssignStatement) pNode).name().value());
+        }
+        // While Statements
+        else if (pNode.getClass() == WhileStatement.class)
+            return evalWhileStatement((WhileStatement) pNode, env);
+
+        // For Statements
+        else if (pNode.getClass() == ForStatement.class)
+            return evalForStatement((ForStatement) pNode, env);
+
         // Identifiers
         else if (pNode.getClass() == Identifier.class)
             return evalIdentifier(pNode, env);
 
         // Function Literals
-        else if (pNode.getClass() == FunctionLiteral.class){
-            List<Identifier> params = ((FunctionLiteral) pNode).parameters();
-            BlockStatement body = ((FunctionLiteral) pNode).body();
-            return new FunctionObj(params, body, env);
-        }
+        else if (pNode.getClass() == FunctionSite.class)
+            return evalFunctionLiteral((FunctionSite) pNode, env, null);
+        else if (pNode.getClass() == FunctionLiteral.class)
+            return evalFunctionLiteral(new FunctionSite((FunctionLiteral) pNode), env, null);
+
         // Call Expressions
-        else if (pNode.getClass() == CallExpression.class) {
-            Entity func = eval(((CallExpression) pNode).function(), env);
-            if (isError(func))
-                return func;
-            List<Entity> args = evalExpressionsList(((CallExpression) pNode).params(), env);
-            if (args.size() == 1 && isError(args.get(0)))
-                return args.get(0);
-            return evalFunction(func, args);
-        }
+        else if (pNode.getClass() == CallSite.class)
+            return evalCallExpression(((CallSite) pNode).call(), (CallSite) pNode, env);
+        else if (pNode.getClass() == CallExpression.class)
+            return evalCallExpression((CallExpression) pNode, null, env);
+
+        // Inlined Calls
+        else if (pNode.getClass() == InlinedCall.class)
+            return evalInlinedCall((InlinedCall) pNode, env);
+
         // default
         return NULL;
     }
@@ -142,78 +216,384 @@ public abstract class Interpreter {
     private static void initBuiltIns() {
 
         // len() for Strings and Arrays
-        BuiltInFunction lenBuiltInFn = (Entity... args) -> {
-            if (args.length == 1) {
-                if (args[0].Type() == EntityType.STRING_OBJ)
-                    return new IntegerObj(((StringObj) args[0]).value().length());
-                else if (args[0].Type() == EntityType.ARRAY_OBJ)
-                    return new IntegerObj(((ArrayObj) args[0]).value().size());
-                else return newError("wrong type of argument for 'len'; expected: STRING, got: %s", args[0].Type());
-            }
-            return newError("wrong number of arguments; got: %d, want: 1",args.length);
+        BuiltInFunction.Unary lenBuiltInFn = (Entity arg) -> {
+            if (arg.Type() == EntityType.STRING_OBJ)
+                return new IntegerObj(((StringObj) arg).value().length());
+            else if (arg.Type() == EntityType.ARRAY_OBJ)
+                return new IntegerObj(((ArrayObj) arg).value().size());
+            else return newError("wrong type of argument for 'len'; expected: STRING, got: %s", arg.Type());
         };
         builtins.put("len", new BuiltIn(lenBuiltInFn));
 
         // head() for Arrays
-        BuiltInFunction headBuiltInFn = (Entity... args) -> {
-            if (args.length == 1) {
-                if (args[0].Type() == EntityType.ARRAY_OBJ) {
-                    if (!((ArrayObj) args[0]).value().isEmpty())
-                        return ((ArrayObj) args[0]).value().get(0);
-                    return new ArrayObj();
-                }
-                else return newError("wrong type of argument for 'head'; expected: ARRAY, got: %s", args[0].Type());
+        BuiltInFunction.Unary headBuiltInFn = (Entity arg) -> {
+            if (arg.Type() == EntityType.ARRAY_OBJ) {
+                if (!((ArrayObj) arg).value().isEmpty())
+                    return ((ArrayObj) arg).value().get(0);
+                return new ArrayObj();
             }
-            return newError("wrong number of arguments - want: 1, got: %d",args.length);
+            else return newError("wrong type of argument for 'head'; expected: ARRAY, got: %s", arg.Type());
         };
         builtins.put("head", new BuiltIn(headBuiltInFn));
 
         // tail() for Arrays
-        BuiltInFunction tailBuiltInFn = (Entity... args) -> {
-            if (args.length == 1) {
-                if (args[0].Type() == EntityType.ARRAY_OBJ) {
-                    if (!((ArrayObj) args[0]).value().isEmpty()) {
-                        List<Entity> shorterArr = new ArrayList<>(((ArrayObj) args[0]).value());
-                        shorterArr.remove(0);
-                        return new ArrayObj(shorterArr);
-                    }
-                    return new ArrayObj();
+        BuiltInFunction.Unary tailBuiltInFn = (Entity arg) -> {
+            if (arg.Type() == EntityType.ARRAY_OBJ) {
+                if (arg.getClass() == MappedArrayObj.class && !((ArrayObj) arg).value().isEmpty())
+                    return ((MappedArrayObj) arg).tail();
+                if (!((ArrayObj) arg).value().isEmpty()) {
+                    ErrorMsg exceeded = charge(((ArrayObj) arg).value().size());
+                    if (exceeded != null)
+                        return exceeded;
+                    List<Entity> shorterArr = new ArrayList<>(((ArrayObj) arg).value());
+                    shorterArr.remove(0);
+                    return new ArrayObj(shorterArr);
                 }
-                else return newError("wrong type of argument for 'tail'; expected: ARRAY, got: %s", args[0].Type());
+                return new ArrayObj();
             }
-            return newError("wrong number of arguments - want: 1, got: %d",args.length);
+            else return newError("wrong type of argument for 'tail'; expected: ARRAY, got: %s", arg.Type());
         };
         builtins.put("tail", new BuiltIn(tailBuiltInFn));
 
         // last() for Arrays
-        BuiltInFunction lastBuiltInFn = (Entity... args) -> {
-            if (args.length == 1) {
-                if (args[0].Type() == EntityType.ARRAY_OBJ) {
-                    if (!((ArrayObj) args[0]).value().isEmpty()) {
-                        var indexLast = ((ArrayObj) args[0]).value().size() - 1;
-                        return ((ArrayObj) args[0]).value().get(indexLast);
-                    }
-                    return new ArrayObj();
+        BuiltInFunction.Unary lastBuiltInFn = (Entity arg) -> {
+            if (arg.Type() == EntityType.ARRAY_OBJ) {
+                if (!((ArrayObj) arg).value().isEmpty()) {
+                    var indexLast = ((ArrayObj) arg).value().size() - 1;
+                    return ((ArrayObj) arg).value().get(indexLast);
                 }
-                else return newError("wrong type of argument for 'last'; expected: ARRAY, got: %s", args[0].Type());
+                return new ArrayObj();
             }
-            return newError("wrong number of arguments - want: 1, got: %d",args.length);
+            else return newError("wrong type of argument for 'last'; expected: ARRAY, got: %s", arg.Type());
         };
         builtins.put("last", new BuiltIn(lastBuiltInFn));
 
         // push() for Arrays
-        BuiltInFunction pushBuiltInFn = (Entity... args) -> {
-            if (args.length == 2) {
-                if (args[0].Type() == EntityType.ARRAY_OBJ) {
-                    var maxIndex = ((ArrayObj) args[0]).value().size();
-                    ((ArrayObj) args[0]).value().add(maxIndex, args[1]);
-                    return args[0];
-                }
-                else return newError("wrong type of argument for 'push'; expected: ARRAY, got: %s", args[0].Type());
+        BuiltInFunction.Binary pushBuiltInFn = (Entity arr, Entity elem) -> {
+            if (arr.Type() == EntityType.ARRAY_OBJ) {
+                if (arr.getClass() == MappedArrayObj.class)
+                    return newError("'push' can't grow a memory-mapped array");
+                ErrorMsg exceeded = charge(1);
+                if (exceeded != null)
+                    return exceeded;
+                var maxIndex = ((ArrayObj) arr).value().size();
+                ((ArrayObj) arr).value().add(maxIndex, elem);
+                return arr;
             }
-            return newError("wrong number of arguments - expected: 2, got: %d",args.length);
+            else return newError("wrong type of argument for 'push'; expected: ARRAY, got: %s", arr.Type());
         };
         builtins.put("push", new BuiltIn(pushBuiltInFn));
+
+        // set() for Arrays, replaces the element at the index and returns the array
+        BuiltInFunction.Ternary setBuiltInFn = (Entity arr, Entity index, Entity elem) -> {
+            if (arr.Type() != EntityType.ARRAY_OBJ)
+                return newError("wrong type of argument for 'set'; expected: ARRAY, got: %s", arr.Type());
+            if (index.Type() != EntityType.INT_OBJ)
+                return newError("Type mismatch on index value - expected: INT, got %s", index.Type());
+            var indexInt = ((IntegerObj) index).value();
+            var maxIndex = ((ArrayObj) arr).value().size() - 1;
+            if (indexInt < 0 || indexInt > maxIndex)
+                return newError("IndexOutOfBounds - max index: %s, got: %s", maxIndex, indexInt);
+            if (arr.getClass() == MappedArrayObj.class) {
+                if (((MappedArrayObj) arr).mode() == MappedArrayObj.Mode.READ_ONLY)
+                    return newError("'set' on a read-only memory-mapped array");
+                if (elem.Type() != EntityType.INT_OBJ)
+                    return newError("wrong type of argument for 'set'; expected: INT, got: %s", elem.Type());
+            }
+            ((ArrayObj) arr).value().set(indexInt, elem);
+            return arr;
+        };
+        builtins.put("set", new BuiltIn(setBuiltInFn));
+
+        // mmapInts() maps a file of 32-bit little-endian integers as an array; the optional mode
+        // is "r" (default), "rw" (writes go to the file, see flush) or "cow" (writes stay private)
+        BuiltInFunction mmapIntsBuiltInFn = (Entity... args) -> {
+            if (args.length == 1 || args.length == 2) {
+                if (args[0].Type() != EntityType.STRING_OBJ)
+                    return newError("wrong type of argument for 'mmapInts'; expected: STRING, got: %s", args[0].Type());
+                MappedArrayObj.Mode mode = MappedArrayObj.Mode.READ_ONLY;
+                if (args.length == 2) {
+                    if (args[1].Type() != EntityType.STRING_OBJ)
+                        return newError("wrong type of argument for 'mmapInts'; expected: STRING, got: %s", args[1].Type());
+                    switch (((StringObj) args[1]).value()) {
+                        case "r" -> mode = MappedArrayObj.Mode.READ_ONLY;
+                        case "rw" -> mode = MappedArrayObj.Mode.READ_WRITE;
+                        case "cow" -> mode = MappedArrayObj.Mode.COPY_ON_WRITE;
+                        default -> { return newError("unknown mode for 'mmapInts' - expected: r, rw or cow, got: %s", ((StringObj) args[1]).value()); }
+                    }
+                }
+                try {
+                    return MappedArrayObj.map(Path.of(((StringObj) args[0]).value()), mode);
+                } catch (IOException | InvalidPathException e) {
+                    return newError("'mmapInts' can't map %s: %s", ((StringObj) args[0]).value(), e);
+                }
+            }
+            return newError("wrong number of arguments - want: 1 or 2, got: %d", args.length);
+        };
+        builtins.put("mmapInts", new BuiltIn(mmapIntsBuiltInFn));
+
+        // flush() writes the changes of a memory-mapped array back to its file
+        BuiltInFunction.Unary flushBuiltInFn = (Entity arr) -> {
+            if (arr.getClass() != MappedArrayObj.class)
+                return newError("wrong type of argument for 'flush'; expected: memory-mapped ARRAY, got: %s", arr.Type());
+            ((MappedArrayObj) arr).flush();
+            return arr;
+        };
+        builtins.put("flush", new BuiltIn(flushBuiltInFn));
+
+        // serialize() writes a value of nulls, booleans, integers, strings, arrays and maps to a file
+        // in the binary encoding of EntityCodec and returns the number of bytes written
+        BuiltInFunction.Binary serializeBuiltInFn = (Entity value, Entity path) -> {
+            if (path.Type() != EntityType.STRING_OBJ)
+                return newError("wrong type of argument for 'serialize'; expected: STRING, got: %s", path.Type());
+            try {
+                return new IntegerObj((int) Math.min(EntityCodec.write(value, Path.of(((StringObj) path).value())), Integer.MAX_VALUE));
+            } catch (IOException | InvalidPathException e) {
+                return newError("'serialize' can't write %s: %s", ((StringObj) path).value(), e);
+            }
+        };
+        builtins.put("serialize", new BuiltIn(serializeBuiltInFn));
+
+        // deserialize() reads a value written by serialize()
+        BuiltInFunction.Unary deserializeBuiltInFn = (Entity path) -> {
+            if (path.Type() != EntityType.STRING_OBJ)
+                return newError("wrong type of argument for 'deserialize'; expected: STRING, got: %s", path.Type());
+            try {
+                return EntityCodec.read(Path.of(((StringObj) path).value()));
+            } catch (IOException | InvalidPathException e) {
+                return newError("'deserialize' can't read %s: %s", ((StringObj) path).value(), e);
+            }
+        };
+        builtins.put("deserialize", new BuiltIn(deserializeBuiltInFn));
+
+        // parseJson() builds the value of a JSON document
+        BuiltInFunction.Unary parseJsonBuiltInFn = (Entity str) -> {
+            if (str.Type() != EntityType.STRING_OBJ)
+                return newError("wrong type of argument for 'parseJson'; expected: STRING, got: %s", str.Type());
+            Json json = new Json(new StringReader(((StringObj) str).value()));
+            try {
+                return json.document();
+            } catch (Json.Exceeded e) {
+                return e.error;
+            } catch (IOException e) {
+                return newError("'parseJson' can't parse the document: %s", e.getMessage());
+            }
+        };
+        builtins.put("parseJson", new BuiltIn(parseJsonBuiltInFn));
+
+        // readJson() reads a JSON file; with a function, it is called with each element of a top-level
+        // array in turn, without building the whole array, and the number of elements is returned
+        BuiltInFunction readJsonBuiltInFn = (Entity... args) -> {
+            if (args.length != 1 && args.length != 2)
+                return newError("wrong number of arguments - want: 1 or 2, got: %d", args.length);
+            if (args[0].Type() != EntityType.STRING_OBJ)
+                return newError("wrong type of argument for 'readJson'; expected: STRING, got: %s", args[0].Type());
+            if (args.length == 2 && args[1].Type() != EntityType.FUNCTION_OBJ && args[1].Type() != EntityType.BUILTIN_OBJ)
+                return newError("wrong type of argument for 'readJson'; expected: FUNCTION or BUILTIN, got: %s", args[1].Type());
+            String path = ((StringObj) args[0]).value();
+            try (Reader reader = Files.newBufferedReader(Path.of(path), StandardCharsets.UTF_8)) {
+                Json json = new Json(reader);
+                if (args.length == 1)
+                    return json.document();
+                int[] count = {0};
+                ErrorMsg error = json.forEach(element -> {
+                    Entity result = applyFunction(args[1], element);
+                    if (isError(result))
+                        return (ErrorMsg) result;
+                    count[0]++;
+                    return null;
+                });
+                return error != null ? error : new IntegerObj(count[0]);
+            } catch (Json.Exceeded e) {
+                return e.error;
+            } catch (IOException | InvalidPathException e) {
+                return newError("'readJson' can't read %s: %s", path, e.getMessage());
+            }
+        };
+        builtins.put("readJson", new BuiltIn(readJsonBuiltInFn));
+
+        // toJson() for Strings, Integers, Booleans, Null and Arrays and Maps of them
+        BuiltInFunction.Unary toJsonBuiltInFn = (Entity value) -> {
+            StringBuilder out = new StringBuilder();
+            try {
+                Json.write(value, out);
+            } catch (IOException e) {
+                return newError("'toJson' can't write the value: %s", e.getMessage());
+            }
+            return new StringObj(out.toString());
+        };
+        builtins.put("toJson", new BuiltIn(toJsonBuiltInFn));
+
+        // lines() for files, a lazy sequence of the lines read with next()
+        BuiltInFunction.Unary linesBuiltInFn = (Entity path) -> {
+            if (path.Type() != EntityType.STRING_OBJ)
+                return newError("wrong type of argument for 'lines'; expected: STRING, got: %s", path.Type());
+            LineReader reader;
+            try {
+                reader = LineReader.open(Path.of(((StringObj) path).value()));
+            } catch (IOException | InvalidPathException e) {
+                return newError("'lines' can't open %s: %s", ((StringObj) path).value(), e);
+            }
+            return new IteratorObj(() -> {
+                try {
+                    StringObj line = reader.next();
+                    if (line == null)
+                        reader.close();
+                    return line;
+                } catch (IOException e) {
+                    try {
+                        reader.close();
+                    } catch (IOException ignored) { }
+                    return newError("'lines' can't read %s: %s", ((StringObj) path).value(), e);
+                }
+            });
+        };
+        builtins.put("lines", new BuiltIn(linesBuiltInFn));
+
+        // next() for Iterators, NULL once the sequence is exhausted
+        BuiltInFunction.Unary nextBuiltInFn = (Entity it) -> {
+            if (it.Type() != EntityType.ITERATOR_OBJ)
+                return newError("wrong type of argument for 'next'; expected: ITERATOR, got: %s", it.Type());
+            ErrorMsg exceeded = charge(1);
+            if (exceeded != null)
+                return exceeded;
+            return ((IteratorObj) it).next();
+        };
+        builtins.put("next", new BuiltIn(nextBuiltInFn));
+
+        // foreachLine() calls the function with every line of the file and returns the number of lines
+        BuiltInFunction.Binary foreachLineBuiltInFn = (Entity path, Entity fn) -> {
+            if (path.Type() != EntityType.STRING_OBJ)
+                return newError("wrong type of argument for 'foreachLine'; expected: STRING, got: %s", path.Type());
+            if (fn.Type() != EntityType.FUNCTION_OBJ && fn.Type() != EntityType.BUILTIN_OBJ)
+                return newError("wrong type of argument for 'foreachLine'; expected: FUNCTION or BUILTIN, got: %s", fn.Type());
+            int count = 0;
+            try (LineReader reader = LineReader.open(Path.of(((StringObj) path).value()))) {
+                for (StringObj line = reader.next(); line != null; line = reader.next()) {
+                    ErrorMsg exceeded = charge(1);
+                    if (exceeded != null)
+                        return exceeded;
+                    Entity result = applyFunction(fn, line);
+                    if (isError(result))
+                        return result;
+                    count++;
+                }
+            } catch (IOException | InvalidPathException e) {
+                return newError("'foreachLine' can't read %s: %s", ((StringObj) path).value(), e);
+            }
+            return new IntegerObj(count);
+        };
+        builtins.put("foreachLine", new BuiltIn(foreachLineBuiltInFn));
+
+        // memo() for Functions and BuiltIns, optionally with the maximum cache size
+        BuiltInFunction memoBuiltInFn = (Entity... args) -> {
+            if (args.length == 1 || args.length == 2) {
+                if (args[0].Type() != EntityType.FUNCTION_OBJ && args[0].Type() != EntityType.BUILTIN_OBJ)
+                    return newError("wrong type of argument for 'memo'; expected: FUNCTION or BUILTIN, got: %s", args[0].Type());
+                int maxSize = MemoCache.DEFAULT_SIZE;
+                if (args.length == 2) {
+                    if (args[1].Type() != EntityType.INT_OBJ)
+                        return newError("wrong type of argument for 'memo'; expected: INT, got: %s", args[1].Type());
+                    maxSize = ((IntegerObj) args[1]).value();
+                    if (maxSize < 1)
+                        return newError("cache size for 'memo' must be positive, got: %d", maxSize);
+                }
+                return new BuiltIn(new MemoFunction(args[0], new MemoCache(maxSize)));
+            }
+            return newError("wrong number of arguments - want: 1 or 2, got: %d", args.length);
+        };
+        builtins.put("memo", new BuiltIn(memoBuiltInFn));
+
+        // memoStats() for memoized Functions
+        BuiltInFunction.Unary memoStatsBuiltInFn = (Entity arg) -> {
+            if (arg.getClass() == BuiltIn.class && ((BuiltIn) arg).fn() instanceof MemoFunction memo) {
+                Map<Entity, Entity> stats = new HashMap<>(0);
+                stats.put(new StringObj("hits"), counter(memo.cache().hits()));
+                stats.put(new StringObj("misses"), counter(memo.cache().misses()));
+                stats.put(new StringObj("evictions"), counter(memo.cache().evictions()));
+                stats.put(new StringObj("size"), new IntegerObj(memo.cache().size()));
+                stats.put(new StringObj("maxSize"), new IntegerObj(memo.cache().maxSize()));
+                return new MapObj(stats);
+            }
+            else return newError("wrong type of argument for 'memoStats'; expected: memoized function, got: %s", arg.Type());
+        };
+        builtins.put("memoStats", new BuiltIn(memoStatsBuiltInFn));
+
+        // print() writes its Arguments separated by spaces and a newline to the buffered output
+        BuiltInFunction printBuiltInFn = (Entity... args) -> {
+            Writer out = Output.writer();
+            // one print is one line, even when several tasks print at the same time
+            synchronized (out) {
+                try {
+                    for (int i = 0; i < args.length; i++) {
+                        if (i > 0)
+                            out.append(' ');
+                        args[i].inspect(out);
+                    }
+                    out.append('\n');
+                } catch (IOException e) {
+                    return newError("could not write output - %s", e);
+                }
+            }
+            return NULL;
+        };
+        builtins.put("print", new BuiltIn(printBuiltInFn));
+
+        // spawn() runs a Function with the given Arguments on another thread
+        BuiltInFunction spawnBuiltInFn = (Entity... args) -> {
+            if (args.length == 0)
+                return newError("wrong number of arguments - want: at least 1, got: 0");
+            if (args[0].Type() != EntityType.FUNCTION_OBJ && args[0].Type() != EntityType.BUILTIN_OBJ)
+                return newError("wrong type of argument for 'spawn'; expected: FUNCTION or BUILTIN, got: %s", args[0].Type());
+            return Tasks.spawn(args[0], Arrays.copyOfRange(args, 1, args.length));
+        };
+        builtins.put("spawn", new BuiltIn(spawnBuiltInFn));
+
+        // await() for Futures, blocks until the spawned Function returned
+        BuiltInFunction.Unary awaitBuiltInFn = (Entity arg) -> {
+            if (arg.Type() == EntityType.FUTURE_OBJ)
+                return Tasks.await((FutureObj) arg);
+            else return newError("wrong type of argument for 'await'; expected: FUTURE, got: %s", arg.Type());
+        };
+        builtins.put("await", new BuiltIn(awaitBuiltInFn));
+
+        // channel() creates a Channel holding at most the given number of values
+        BuiltInFunction.Unary channelBuiltInFn = (Entity arg) -> {
+            if (arg.Type() != EntityType.INT_OBJ)
+                return newError("wrong type of argument for 'channel'; expected: INT, got: %s", arg.Type());
+            int capacity = ((IntegerObj) arg).value();
+            if (capacity < 0)
+                return newError("capacity of 'channel' must not be negative, got: %d", capacity);
+            return new ChannelObj(capacity);
+        };
+        builtins.put("channel", new BuiltIn(channelBuiltInFn));
+
+        // send() for Channels, blocks while the Channel is full
+        BuiltInFunction.Binary sendBuiltInFn = (Entity ch, Entity value) -> {
+            if (ch.Type() != EntityType.CHANNEL_OBJ)
+                return newError("wrong type of argument for 'send'; expected: CHANNEL, got: %s", ch.Type());
+            try {
+                ((ChannelObj) ch).send(value);
+                return NULL;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return newError("task cancelled");
+            }
+        };
+        builtins.put("send", new BuiltIn(sendBuiltInFn));
+
+        // recv() for Channels, blocks while the Channel is empty
+        BuiltInFunction.Unary recvBuiltInFn = (Entity ch) -> {
+            if (ch.Type() != EntityType.CHANNEL_OBJ)
+                return newError("wrong type of argument for 'recv'; expected: CHANNEL, got: %s", ch.Type());
+            try {
+                return ((ChannelObj) ch).recv();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return newError("task cancelled");
+            }
+        };
+        builtins.put("recv", new BuiltIn(recvBuiltInFn));
     }
 
     private static Entity evalIndexExpression(Entity left, Entity index) {
@@ -232,59 +612,292 @@ public abstract class Interpreter {
         }
     }
 
-    private static Entity evalFunction(Entity func, List<Entity> args) {
-        if (func.getClass() == BuiltIn.class)
-            return ((BuiltIn) func).fn().parse(args.toArray(new Entity[0]));
+    // a call of a tree that was not linked has no site and prepares its target every time
+    private static Entity evalCallExpression(CallExpression call, CallSite site, Environment env) {
+        Entity func = eval(call.function(), env);
+        if (isError(func))
+            return func;
+        CallSite.Target target = site != null ? site.target(func) : CallSite.uncached(func);
+        if (target == null)
+            return newError("not a function: %s", func.Type());
+        List<Expression> argExprs = call.params();
+        if (target.arity() >= 0 && argExprs.size() != target.arity())
+            return newError("wrong number of arguments - want: %d, got: %d", target.arity(), argExprs.size());
+        if (target.builtin() != null) {
+            if (Events.builtinEnabled)
+                return recordedBuiltIn(call, target.builtin(), env);
+            return callBuiltIn(target.builtin(), argExprs, env);
+        }
+        // the arguments are evaluated straight into the value array of the new frame
+        Entity[] values = new Entity[argExprs.size()];
+        for (int i = 0; i < values.length; i++) {
+            Entity arg = eval(argExprs.get(i), env);
+            if (isError(arg))
+                return arg;
+            values[i] = arg;
+        }
+        FunctionObj fn = (FunctionObj) func;
+        return callFunctionObj(fn, new EnclosedEnvironment(fn.env(), target.params(), values, fn.scope()));
+    }
+
+    // the inlined body runs in the frame of the caller, unless the name is no longer bound to the inlined function
+    private static Entity evalInlinedCall(InlinedCall inlined, Environment env) {
+        // a profiled, counted, recorded or budgeted run sees every call, so it takes the original one
+        boolean observed = Profiler.enabled || Metrics.enabled || Events.callEnabled || Budget.current() != null;
+        if (!observed && inlined.holds(env.get(((Identifier) inlined.call().call().function()).value())))
+            return eval(inlined.body(), env);
+        return evalCallExpression(inlined.call().call(), inlined.call(), env);
+    }
+
+    private static Entity recordedBuiltIn(CallExpression call, BuiltInFunction fn, Environment env) {
+        Entity[] args = new Entity[call.params().size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = eval(call.params().get(i), env);
+            if (isError(args[i]))
+                return args[i];
+        }
+        Events.BuiltinCall event = new Events.BuiltinCall();
+        event.begin();
+        Entity result = fn.parse(args);
+        event.end();
+        if (event.shouldCommit()) {
+            event.builtin = call.function().getClass() == Identifier.class ? ((Identifier) call.function()).value() : "<builtin>";
+            event.arguments = args.length;
+            event.commit();
+        }
+        return result;
+    }
+
+    private static Entity callBuiltIn(BuiltInFunction fn, List<Expression> argExprs, Environment env) {
+        switch (argExprs.size()) {
+            case 0 -> { return fn.call0(); }
+            case 1 -> {
+                Entity a = eval(argExprs.get(0), env);
+                if (isError(a))
+                    return a;
+                return fn.call1(a);
+            }
+            case 2 -> {
+                Entity a = eval(argExprs.get(0), env);
+                if (isError(a))
+                    return a;
+                Entity b = eval(argExprs.get(1), env);
+                if (isError(b))
+                    return b;
+                return fn.call2(a, b);
+            }
+            case 3 -> {
+                Entity a = eval(argExprs.get(0), env);
+                if (isError(a))
+                    return a;
+                Entity b = eval(argExprs.get(1), env);
+                if (isError(b))
+                    return b;
+                Entity c = eval(argExprs.get(2), env);
+                if (isError(c))
+                    return c;
+                return fn.call3(a, b, c);
+            }
+            case 4 -> {
+                Entity a = eval(argExprs.get(0), env);
+                if (isError(a))
+                    return a;
+                Entity b = eval(argExprs.get(1), env);
+                if (isError(b))
+                    return b;
+                Entity c = eval(argExprs.get(2), env);
+                if (isError(c))
+                    return c;
+                Entity d = eval(argExprs.get(3), env);
+                if (isError(d))
+                    return d;
+                return fn.call4(a, b, c, d);
+            }
+            default -> {
+                Entity[] args = new Entity[argExprs.size()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = eval(argExprs.get(i), env);
+                    if (isError(args[i]))
+                        return args[i];
+                }
+                return fn.parse(args);
+            }
+        }
+    }
+
+    // Calls a function value from Java code, e.g. from builtins that take a function.
+    static Entity applyFunction(Entity func, Entity... args) {
+        if (func.getClass() == BuiltIn.class) {
+            BuiltInFunction fn = ((BuiltIn) func).fn();
+            if (fn.arity() >= 0 && args.length != fn.arity())
+                return newError("wrong number of arguments - want: %d, got: %d", fn.arity(), args.length);
+            return fn.parse(args);
+        }
         else if (func.getClass() == FunctionObj.class) {
-            Environment extendedEnv = extendedFunctionEnv(func, args);
-            Entity evalBody = eval(((FunctionObj) func).body(), extendedEnv);
-            return unwrapReturnVal(evalBody);
+            FunctionObj fn = (FunctionObj) func;
+            CallSite.Target target = CallSite.prepare(fn, fn.literal());
+            if (args.length != target.arity())
+                return newError("wrong number of arguments - want: %d, got: %d", target.arity(), args.length);
+            return callFunctionObj(fn, new EnclosedEnvironment(fn.env(), target.params(), args.clone(), fn.scope()));
         }
         else return newError("not a function: %s", func.Type());
     }
 
-    private static Entity unwrapReturnVal(Entity obj) {
-        if (obj.getClass() == ReturnValue.class)
-            return ((ReturnValue) obj).value();
-        return obj;
+    private static Entity callFunctionObj(FunctionObj fn, EnclosedEnvironment frame) {
+        Budget budget = Budget.current();
+        if (budget != null) {
+            ErrorMsg exceeded = budget.enter();
+            if (exceeded != null)
+                return exceeded;
+            try {
+                return dispatchFunctionObj(fn, frame);
+            } finally {
+                budget.exit();
+            }
+        }
+        if (Budget.interrupted())
+            return newError("task cancelled");
+        return dispatchFunctionObj(fn, frame);
+    }
+
+    private static Entity dispatchFunctionObj(FunctionObj fn, EnclosedEnvironment frame) {
+        if (Profiler.enabled || Metrics.enabled || Events.callEnabled)
+            return instrumentedFunctionObj(fn, frame);
+        return applyFunctionObj(fn, frame);
+    }
+
+    private static Entity instrumentedFunctionObj(FunctionObj fn, EnclosedEnvironment frame) {
+        boolean profiled = Profiler.enabled;
+        boolean counted = Metrics.enabled;
+        Events.GuestCall event = Events.callEnabled ? new Events.GuestCall() : null;
+        if (profiled)
+            Profiler.enter(fn.literal());
+        if (counted)
+            Metrics.enterCall();
+        if (event != null)
+            event.begin();
+        try {
+            return applyFunctionObj(fn, frame);
+        } finally {
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    FunctionLiteral literal = fn.literal();
+                    event.function = literal.name() != null ? literal.name() : "<anonymous>";
+                    event.position = literal.tok().position();
+                    event.arguments = frame.size();
+                    event.commit();
+                }
+            }
+            if (counted)
+                Metrics.exitCall();
+            if (profiled)
+                Profiler.exit();
+        }
     }
 
-    private static Environment extendedFunctionEnv(Entity func, List<Entity> args) {
-        assert func.getClass() == FunctionObj.class;
-        EnclosedEnvironment newEnv = new EnclosedEnvironment(((FunctionObj) func).env());
-        int i = 0;
-        for (Identifier name: ((FunctionObj) func).parameters()) {
-            // TODO: OutOfBounds error handling for arguments mismatch!
-            newEnv.set(name.value(), args.get(i));
-            i++;
+    private static Entity applyFunctionObj(FunctionObj fn, EnclosedEnvironment frame) {
+        // the body of a generator function only runs as the values are pulled
+        if (fn.scope().generator())
+            return Generator.start(fn, frame);
+        if (JitCompiler.enabled) {
+            Entity compiledResult = callCompiled(fn, frame);
+            if (compiledResult != null)
+                return compiledResult;
         }
-        return newEnv;
+        Entity evalBody = eval(fn.body(), frame);
+        return unwrapReturnVal(evalBody, frame);
     }
 
-    private static Map<Entity, Entity> evalMapPairs(Map<Expression, Expression> pairs, Environment env) {
-        Map<Entity, Entity> elements = new HashMap<>(0);
-         for (Map.Entry<Expression, Expression> entry : pairs.entrySet()) {
+    private static Entity callCompiled(FunctionObj func, EnclosedEnvironment frame) {
+        CompiledFunction compiled = func.scope().jit().compiled(func.literal());
+        if (compiled == null)
+            return null;
+        // compiled loops and self calls never check the budget, so a bounded run keeps them interpreted
+        if (compiled.unbounded() && Budget.current() != null)
+            return null;
+        return compiled.invoke(func, frame);
+    }
+
+    private static Entity unwrapReturnVal(Entity obj, Environment env) {
+        if (obj == RETURN)
+            return env.takeReturnValue();
+        return obj;
+    }
+
+    private static Entity evalMapPairs(Map<Expression, Expression> pairs, Environment env, Map<Entity, Entity> elements) {
+        for (Map.Entry<Expression, Expression> entry : pairs.entrySet()) {
             Entity key = eval(entry.getKey(), env);
             if (!(key.Type() == EntityType.STRING_OBJ || key.Type() == EntityType.BOOLEAN_OBJ || key.Type() == EntityType.INT_OBJ))
-                return new HashMap<>(Map.of(NULL, newError("Map: Key type mismatch - expected: STRING, BOOL or INT, got %s", key.Type())));
+                return newError("Map: Key type mismatch - expected: STRING, BOOL or INT, got %s", key.Type());
             Entity value = eval(entry.getValue(), env);
             if (!(value.Type() == EntityType.STRING_OBJ || value.Type() == EntityType.BOOLEAN_OBJ || value.Type() == EntityType.INT_OBJ))
-                return new HashMap<>(Map.of(NULL, newError("Map: Value type mismatch - expected: STRING, BOOL or INT, got %s", value.Type())));
+                return newError("Map: Value type mismatch - expected: STRING, BOOL or INT, got %s", value.Type());
             elements.put(key, value);
         }
-        return elements;
+        return null;
     }
 
-    private static List<Entity> evalExpressionsList(List<Expression> params, Environment env) {
-        List<Entity> expressions = new ArrayList<>(0);
+    // Evaluates into the given list and returns the first error, or null if there was none.
+    private static Entity evalExpressionsList(List<Expression> params, Environment env, List<Entity> expressions) {
         for (Expression arg: params) {
             Entity result = eval(arg, env);
-            if (isError(result)){
-                return new ArrayList<>(List.of(result));
-            }
+            if (isError(result))
+                return result;
             expressions.add(result);
         }
-        return expressions;
+        return null;
+    }
+
+    // Functions defined inside a function only keep the values of their free variables, so a
+    // closure does not hold on to the whole chain of frames it was created in. Names bound in no
+    // frame are left to the global environment, which stays late bound. If a frame may still bind
+    // a free variable after this point, the closure keeps the defining environment instead.
+    // selfName is the name a let statement is about to bind the function to, so it can call itself.
+    private static FunctionObj evalFunctionLiteral(FunctionSite site, Environment env, String selfName) {
+        FunctionLiteral literal = site.literal();
+        FunctionScope own = site.scope();
+        if (env.getClass() != EnclosedEnvironment.class)
+            return new FunctionObj(literal, env, own);
+        Environment global = env;
+        while (global.outer() != null)
+            global = global.outer();
+
+        String[] free = own.free();
+        String[] names = new String[free.length];
+        Entity[] values = new Entity[free.length];
+        int size = 0;
+        boolean selfCaptured = false;
+        for (String name: free) {
+            for (Environment frame = env; frame != global; frame = frame.outer()) {
+                FunctionScope scope = ((EnclosedEnvironment) frame).scope();
+                if (scope == null)
+                    return new FunctionObj(literal, env, own);
+                Entity value = frame.getLocal(name);
+                if (value != null && value != NULL) {
+                    if (scope.rebinds(name))
+                        return new FunctionObj(literal, env, own);
+                    names[size] = name;
+                    values[size++] = value;
+                    break;
+                }
+                if (scope.declares(name)) {
+                    if (frame != env || !name.equals(selfName) || scope.rebinds(name))
+                        return new FunctionObj(literal, env, own);
+                    names[size++] = name;
+                    selfCaptured = true;
+                    break;
+                }
+            }
+        }
+        if (size == 0)
+            return new FunctionObj(literal, global, own);
+        EnclosedEnvironment captured = new EnclosedEnvironment(global, Arrays.copyOf(names, size),
+                Arrays.copyOf(values, size), FunctionScope.CAPTURED);
+        FunctionObj fn = new FunctionObj(literal, captured, own);
+        if (selfCaptured)
+            captured.set(selfName, fn);
+        return fn;
     }
 
     private static Entity evalIdentifier(Node pNode, Environment env) {
@@ -298,17 +911,81 @@ public abstract class Interpreter {
     }
 
     private static Entity evalBlockStatement(BlockStatement pBlock, Environment env) {
+        Budget budget = Budget.current();
+        if (budget != null) {
+            ErrorMsg exceeded = budget.step();
+            if (exceeded != null)
+                return exceeded;
+        }
+        else if (Budget.interrupted())
+            return newError("task cancelled");
         Entity result = null;
         for (Statement stmt: pBlock.statements()) {
             result = eval(stmt, env);
             if (result != null) {
-                if (result.Type() == EntityType.RETURN_VALUE_OBJ || result.Type() == EntityType.ERROR_OBJ)
+                if (result == RETURN || result.getClass() == ErrorMsg.class)
                     return result;
             }
         }
         return result;
     }
 
+    // Loop bodies run in the enclosing frame, so an iteration allocates no environment.
+    private static Entity evalWhileStatement(WhileStatement loop, Environment env) {
+        for (;;) {
+            Entity condition = eval(loop.condition(), env);
+            if (isError(condition))
+                return condition;
+            if (!isTruthy(condition))
+                return NULL;
+            Entity result = eval(loop.body(), env);
+            if (result == RETURN || isError(result))
+                return result;
+        }
+    }
+
+    private static Entity evalForStatement(ForStatement loop, Environment env) {
+        String name = loop.variable().value();
+        Entity iterable = eval(loop.iterable(), env);
+        if (isError(iterable))
+            return iterable;
+        if (loop.end() != null) {
+            Entity end = eval(loop.end(), env);
+            if (isError(end))
+                return end;
+            if (iterable.Type() != EntityType.INT_OBJ || end.Type() != EntityType.INT_OBJ)
+                return newError("range bounds must be INT - got: %s..%s", iterable.Type(), end.Type());
+            int to = ((IntegerObj) end).value();
+            for (int i = ((IntegerObj) iterable).value(); i < to; i++) {
+                env.set(name, new IntegerObj(i));
+                Entity result = eval(loop.body(), env);
+                if (result == RETURN || isError(result))
+                    return result;
+            }
+        }
+        else if (iterable.Type() == EntityType.ARRAY_OBJ) {
+            List<Entity> elements = ((ArrayObj) iterable).value();
+            for (int i = 0; i < elements.size(); i++) {
+                env.set(name, elements.get(i));
+                Entity result = eval(loop.body(), env);
+                if (result == RETURN || isError(result))
+                    return result;
+            }
+        }
+        else if (iterable.Type() == EntityType.ITERATOR_OBJ) {
+            for (Entity element = ((IteratorObj) iterable).next(); element != NULL; element = ((IteratorObj) iterable).next()) {
+                if (isError(element))
+                    return element;
+                env.set(name, element);
+                Entity result = eval(loop.body(), env);
+                if (result == RETURN || isError(result))
+                    return result;
+            }
+        }
+        else return newError("for can't iterate over %s - expected: ARRAY, ITERATOR or INT range", iterable.Type());
+        return NULL;
+    }
+
     private static Entity evalIfExpression(Entity condition, BlockStatement consequence, BlockStatement alternative, Environment env) {
         if (isTruthy(condition))
             return eval(consequence, env);
@@ -342,6 +1019,9 @@ public abstract class Interpreter {
         String leftVal = ((StringObj) left).value();
         String rightVal = ((StringObj) right).value();
         if (op.equals("+")) {
+            ErrorMsg exceeded = charge(1);
+            if (exceeded != null)
+                return exceeded;
             return new StringObj(leftVal + rightVal);
         }
         return newError("unknown operator: %s %s %s", left.Type(), op, right.Type());
@@ -403,10 +1083,13 @@ public abstract class Interpreter {
     private static Entity evalProgram(List<Statement> pStatements, Environment env) {
         Entity result = null;
         for (Statement stmt: pStatements) {
-            result = eval(stmt, env);
+            if (Events.statementEnabled)
+                result = recordedStatement(stmt, env);
+            else
+                result = eval(stmt, env);
             if (result != null) {
-                if (result.getClass() == ReturnValue.class)
-                    return ((ReturnValue) result).value();
+                if (result == RETURN)
+                    return env.takeReturnValue();
                 else if (result.getClass() == ErrorMsg.class)
                     return result;
             }
@@ -414,13 +1097,38 @@ public abstract class Interpreter {
         return result;
     }
 
+    private static Entity recordedStatement(Statement stmt, Environment env) {
+        Events.TopLevelStatement event = new Events.TopLevelStatement();
+        event.begin();
+        Entity result = eval(stmt, env);
+        event.end();
+        if (event.shouldCommit()) {
+            event.kind = stmt.getClass().getSimpleName();
+            event.line = Events.line(stmt);
+            event.commit();
+        }
+        return result;
+    }
+
+    private static ErrorMsg charge(long count) {
+        Budget budget = Budget.current();
+        if (budget != null)
+            return budget.allocate(count);
+        return null;
+    }
+
+    // INTs are 32 bits, a long counter that outgrew them reads as the largest INT instead of wrapping around
+    private static IntegerObj counter(long count) {
+        return new IntegerObj((int) Math.min(count, Integer.MAX_VALUE));
+    }
+
     private static boolean isError(Entity obj) {
-        if(obj != null)
-            return obj.Type() == EntityType.ERROR_OBJ;
-        return false;
+        return obj != null && obj.getClass() == ErrorMsg.class;
     }
 
     private static ErrorMsg newError(String format, Object... entities) {
-        return new ErrorMsg(String.format(format, entities));
+        if (Metrics.enabled)
+            Metrics.errorCreated();
+        return new ErrorMsg(format, entities);
     }
 }
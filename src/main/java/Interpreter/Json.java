@@ -0,0 +1,354 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/*
+ * JSON reader and writer for script values. The reader pulls characters through its
+ * own buffer from any Reader and builds maps, arrays, strings and integers directly,
+ * without tokens or an intermediate tree; object keys are interned per document, so
+ * records repeating the same keys share one String for each. forEach() materializes
+ * the elements of a top-level array one at a time for documents too large to hold.
+ * Every value built is charged to the budget of the reading thread as it is built, so
+ * a document too large for the budget stops with Exceeded before it is complete.
+ *
+ * Karaoke only has 32-bit integers, so a number with a fraction, an exponent or out
+ * of that range is an error. Written maps use the inspected form of INT and BOOL keys
+ * as their names.
+ */
+public final class Json {
+
+    static final int MAX_DEPTH = 512;
+    private static final int BUFFER_SIZE = 1 << 13;
+    private static final int MAX_KEYS = 1 << 12;
+
+    /* The budget ran out while the document was read. */
+    static final class Exceeded extends IOException {
+        private static final long serialVersionUID = 1L;
+        final transient ErrorMsg error;
+
+        Exceeded(ErrorMsg pError) {
+            super(pError.message(), null);
+            this.error = pError;
+        }
+    }
+
+    public interface ElementHandler {
+        /* Called with every element, returns an error to stop or null to go on. */
+        ErrorMsg accept(Entity element);
+    }
+
+    private final Reader in;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    private long offset = 0;
+    private final Map<String, String> keys = new HashMap<>();
+    private final StringBuilder scratch = new StringBuilder();
+    private final Budget budget = Budget.current();
+
+    public Json(Reader pIn) {
+        this.in = pIn;
+    }
+
+    /* Reads a document holding a single value. */
+    public Entity document() throws IOException {
+        Entity value = this.value(0);
+        this.end();
+        return value;
+    }
+
+    /*
+     * Hands the elements of a top-level array to the handler one at a time, or the
+     * value itself if it is no array. Returns the error of the handler, if any.
+     */
+    public ErrorMsg forEach(ElementHandler handler) throws IOException {
+        if (this.peek() != '[') {
+            ErrorMsg error = handler.accept(this.value(0));
+            this.end();
+            return error;
+        }
+        this.pos++;
+        if (this.peek() != ']') {
+            do {
+                ErrorMsg error = handler.accept(this.value(1));
+                if (error != null)
+                    return error;
+            } while (this.separator(']'));
+        }
+        else this.pos++;
+        this.end();
+        return null;
+    }
+
+    private void end() throws IOException {
+        if (this.peek() != -1)
+            throw this.error("unexpected data after the value");
+    }
+
+    // reads up to the next non-blank character and returns it without consuming it, -1 at the end
+    private int peek() throws IOException {
+        for (;;) {
+            if (this.pos == this.limit && !this.fill())
+                return -1;
+            char c = this.buf[this.pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                return c;
+            this.pos++;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        this.offset += this.limit;
+        this.pos = 0;
+        this.limit = Math.max(this.in.read(this.buf), 0);
+        return this.limit > 0;
+    }
+
+    private char next() throws IOException {
+        if (this.pos == this.limit && !this.fill())
+            throw this.error("unexpected end of input");
+        return this.buf[this.pos++];
+    }
+
+    // consumes a ',' and returns true, or the closing character and returns false
+    private boolean separator(char close) throws IOException {
+        int c = this.peek();
+        this.pos++;
+        if (c == ',')
+            return true;
+        if (c == close)
+            return false;
+        throw this.error(c == -1 ? "unexpected end of input" : "expected ',' or '" + close + "'");
+    }
+
+    private Entity value(int depth) throws IOException {
+        if (depth > MAX_DEPTH)
+            throw this.error("nested deeper than " + MAX_DEPTH);
+        int c = this.peek();
+        if (this.budget != null) {
+            ErrorMsg exceeded = this.budget.allocate(1);
+            if (exceeded != null)
+                throw new Exceeded(exceeded);
+        }
+        switch (c) {
+            case '{' -> {
+                this.pos++;
+                Map<Entity, Entity> pairs = new HashMap<>(0);
+                if (this.peek() == '}') {
+                    this.pos++;
+                    return new MapObj(pairs);
+                }
+                do {
+                    if (this.peek() != '"')
+                        throw this.error("expected a string as key");
+                    this.pos++;
+                    String key = this.string();
+                    String interned = this.keys.get(key);
+                    if (interned != null)
+                        key = interned;
+                    else if (this.keys.size() < MAX_KEYS)
+                        this.keys.put(key, key);
+                    if (this.peek() != ':')
+                        throw this.error("expected ':'");
+                    this.pos++;
+                    pairs.put(new StringObj(key), this.value(depth + 1));
+                } while (this.separator('}'));
+                return new MapObj(pairs);
+            }
+            case '[' -> {
+                this.pos++;
+                List<Entity> elements = new ArrayList<>();
+                if (this.peek() == ']') {
+                    this.pos++;
+                    return new ArrayObj(elements);
+                }
+                do
+                    elements.add(this.value(depth + 1));
+                while (this.separator(']'));
+                return new ArrayObj(elements);
+            }
+            case '"' -> {
+                this.pos++;
+                return new StringObj(this.string());
+            }
+            case 't' -> {
+                this.literal("true");
+                return Interpreter.TRUE;
+            }
+            case 'f' -> {
+                this.literal("false");
+                return Interpreter.FALSE;
+            }
+            case 'n' -> {
+                this.literal("null");
+                return Interpreter.NULL;
+            }
+            case -1 -> throw this.error("unexpected end of input");
+            default -> {
+                if (c == '-' || (c >= '0' && c <= '9'))
+                    return new IntegerObj(this.number());
+                throw this.error("unexpected character '" + (char) c + "'");
+            }
+        }
+    }
+
+    private void literal(String word) throws IOException {
+        for (int i = 0; i < word.length(); i++) {
+            if (this.next() != word.charAt(i))
+                throw this.error("expected " + word);
+        }
+    }
+
+    private int number() throws IOException {
+        boolean negative = this.buf[this.pos] == '-';
+        if (negative)
+            this.pos++;
+        long value = 0;
+        int digits = 0;
+        for (;;) {
+            if (this.pos == this.limit && !this.fill())
+                break;
+            char c = this.buf[this.pos];
+            if (c < '0' || c > '9') {
+                if (c == '.' || c == 'e' || c == 'E')
+                    throw this.error("only integer numbers are supported");
+                break;
+            }
+            if (digits == 1 && value == 0)
+                throw this.error("leading zero in a number");
+            value = value * 10 + (c - '0');
+            if (value > (long) Integer.MAX_VALUE + 1)
+                throw this.error("number out of the range of INT");
+            digits++;
+            this.pos++;
+        }
+        if (digits == 0)
+            throw this.error("expected a digit");
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE)
+            throw this.error("number out of the range of INT");
+        return (int) value;
+    }
+
+    // the opening quote is consumed already
+    private String string() throws IOException {
+        StringBuilder sb = this.scratch;
+        sb.setLength(0);
+        for (;;) {
+            if (this.pos == this.limit && !this.fill())
+                throw this.error("unterminated string");
+            // runs without escapes are copied in one go
+            int start = this.pos;
+            while (this.pos < this.limit) {
+                char c = this.buf[this.pos];
+                if (c == '"' || c == '\\' || c < 0x20)
+                    break;
+                this.pos++;
+            }
+            sb.append(this.buf, start, this.pos - start);
+            if (this.pos == this.limit)
+                continue;
+            char c = this.buf[this.pos++];
+            if (c == '"')
+                return sb.toString();
+            if (c != '\\')
+                throw this.error("control character in a string");
+            char escape = this.next();
+            switch (escape) {
+                case '"', '\\', '/' -> sb.append(escape);
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(this.next(), 16);
+                        if (digit < 0)
+                            throw this.error("invalid \\u escape");
+                        code = code * 16 + digit;
+                    }
+                    sb.append((char) code);
+                }
+                default -> throw this.error("invalid escape '\\" + escape + "'");
+            }
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at offset " + (this.offset + this.pos));
+    }
+
+    /* Writes the value as JSON; functions and the other runtime objects can't be written. */
+    public static void write(Entity entity, Appendable out) throws IOException {
+        write(entity, out, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private static void write(Entity entity, Appendable out, Set<Entity> open) throws IOException {
+        if (entity == null || entity.getClass() == NullObj.class)
+            out.append("null");
+        else if (entity.getClass() == BooleanObj.class || entity.getClass() == IntegerObj.class)
+            out.append(entity.Inspect());
+        else if (entity.getClass() == StringObj.class)
+            quote(((StringObj) entity).value(), out);
+        else if (entity instanceof ArrayObj || entity.getClass() == MapObj.class) {
+            if (!open.add(entity))
+                throw new IOException("a cyclic structure can't be written as JSON");
+            if (entity instanceof ArrayObj) {
+                List<Entity> elements = ((ArrayObj) entity).value();
+                out.append('[');
+                for (int i = 0; i < elements.size(); i++) {
+                    if (i > 0)
+                        out.append(',');
+                    write(elements.get(i), out, open);
+                }
+                out.append(']');
+            }
+            else {
+                out.append('{');
+                boolean first = true;
+                for (Map.Entry<Entity, Entity> pair: ((MapObj) entity).value().entrySet()) {
+                    if (!first)
+                        out.append(',');
+                    Entity key = pair.getKey();
+                    quote(key.getClass() == StringObj.class ? ((StringObj) key).value() : key.Inspect(), out);
+                    out.append(':');
+                    write(pair.getValue(), out, open);
+                    first = false;
+                }
+                out.append('}');
+            }
+            open.remove(entity);
+        }
+        else throw new IOException(entity.Type() + " can't be written as JSON");
+    }
+
+    private static void quote(String s, Appendable out) throws IOException {
+        out.append('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20)
+                continue;
+            out.append(s, start, i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                case '\b' -> out.append("\\b");
+                case '\f' -> out.append("\\f");
+                default -> out.append(String.format("\\u%04x", (int) c));
+            }
+            start = i + 1;
+        }
+        out.append(s, start, s.length());
+        out.append('"');
+    }
+}
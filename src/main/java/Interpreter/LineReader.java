@@ -0,0 +1,104 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.StringObj;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Reads a file line by line through one direct buffer, so only the current line is
+ * ever decoded onto the heap. Lines end at '\n', a preceding '\r' is dropped, and the
+ * buffer grows when a single line does not fit. Decoding uses the default charset,
+ * like the script files themselves. A reader dropped without being closed, like the
+ * one behind an iterator that is not read to its end, has its file closed by the
+ * cleaner; the action only holds the channel, so the buffer is freed along with the
+ * reader.
+ */
+public final class LineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final Cleaner.Cleanable cleanable;
+    private final Charset charset = Charset.defaultCharset();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).flip();
+    private byte[] scratch = new byte[256];
+    private int scanned = 0;
+    private boolean eof = false;
+
+    private LineReader(FileChannel pChannel) {
+        this.channel = pChannel;
+        this.cleanable = Interpreter.cleaner.register(this, new Closer(pChannel));
+    }
+
+    public static LineReader open(Path path) throws IOException {
+        return new LineReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /* The next line, or null at the end of the file. */
+    public StringObj next() throws IOException {
+        for (;;) {
+            int start = this.buffer.position();
+            int limit = this.buffer.limit();
+            for (int i = Math.max(this.scanned, start); i < limit; i++) {
+                if (this.buffer.get(i) == '\n') {
+                    this.buffer.position(i + 1);
+                    this.scanned = i + 1;
+                    return this.decode(start, i);
+                }
+            }
+            if (this.eof) {
+                if (start == limit)
+                    return null;
+                this.buffer.position(limit);
+                return this.decode(start, limit);
+            }
+            this.scanned = limit - start;
+            this.fill();
+        }
+    }
+
+    private void fill() throws IOException {
+        this.buffer.compact();
+        if (!this.buffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(this.buffer.capacity() * 2);
+            larger.put(this.buffer.flip());
+            this.buffer = larger;
+        }
+        if (this.channel.read(this.buffer) < 0)
+            this.eof = true;
+        this.buffer.flip();
+    }
+
+    private StringObj decode(int start, int end) {
+        if (end > start && this.buffer.get(end - 1) == '\r')
+            end--;
+        int length = end - start;
+        if (length > this.scratch.length)
+            this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+        this.buffer.get(start, this.scratch, 0, length);
+        return new StringObj(new String(this.scratch, 0, length, this.charset));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.cleanable.clean();
+    }
+
+    private record Closer(FileChannel channel) implements Runnable {
+        @Override
+        public void run() {
+            try {
+                this.channel.close();
+            } catch (IOException ignored) {
+                // nothing is read from it anymore
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package Interpreter;
+
+import Parser.AST.Expression;
+import Parser.AST.Expressions.*;
+import Parser.AST.Node;
+import Parser.AST.Program;
+import Parser.AST.Statement;
+import Parser.AST.Statements.*;
+
+import java.util.*;
+
+/*
+ * Pass over a parsed program before it is evaluated. The records of the parser hold
+ * no interpreter state, so the pass puts interpreter nodes in their place where the
+ * evaluator keeps some: every function literal becomes a FunctionSite carrying the
+ * analysis of its scope, and every call a CallSite carrying its inline cache, unless
+ * the Inliner replaces it by the body of the callee. Nodes without a linked descendant
+ * are kept as they are; a tree that was not linked still evaluates, just without the
+ * caches and with its functions analyzed again whenever a closure is made.
+ */
+public final class Linker {
+
+    private final Inliner inliner = new Inliner();
+
+    private Linker() {}
+
+    public static Program link(Program program) {
+        Linker linker = new Linker();
+        List<Statement> stmts = program.getStatements();
+        List<Statement> result = new ArrayList<>(stmts.size());
+        boolean changed = false;
+        for (Statement stmt: stmts) {
+            Statement rewritten = (Statement) linker.rewrite(stmt);
+            changed |= rewritten != stmt;
+            result.add(rewritten);
+            linker.inliner.declare(rewritten);
+        }
+        return changed ? new Program(result) : program;
+    }
+
+    // Returns the node with its calls linked, or the node itself if it holds none.
+    private Node rewrite(Node node) {
+        if (node == null)
+            return null;
+        if (node.getClass() == CallExpression.class) {
+            CallExpression call = (CallExpression) node;
+            Expression function = (Expression) this.rewrite(call.function());
+            List<Expression> params = this.rewriteAll(call.params());
+            if (function != call.function() || params != call.params())
+                call = new CallExpression(call.tok(), function, params);
+            Expression inlined = this.inliner.inline(call);
+            return inlined != null ? inlined : new CallSite(call);
+        }
+        else if (node.getClass() == ArrayLiteral.class) {
+            ArrayLiteral array = (ArrayLiteral) node;
+            List<Expression> elements = this.rewriteAll(array.elements());
+            return elements != array.elements() ? new ArrayLiteral(array.tok(), elements) : array;
+        }
+        else if (node.getClass() == MapLiteral.class) {
+            MapLiteral map = (MapLiteral) node;
+            Map<Expression, Expression> pairs = new HashMap<>(0);
+            boolean changed = false;
+            for (Map.Entry<Expression, Expression> pair: map.pairs().entrySet()) {
+                Expression key = (Expression) this.rewrite(pair.getKey());
+                Expression value = (Expression) this.rewrite(pair.getValue());
+                changed |= key != pair.getKey() || value != pair.getValue();
+                pairs.put(key, value);
+            }
+            return changed ? new MapLiteral(map.tok(), pairs) : map;
+        }
+        else if (node.getClass() == IndexExpression.class) {
+            IndexExpression index = (IndexExpression) node;
+            Expression left = (Expression) this.rewrite(index.left());
+            Expression idx = (Expression) this.rewrite(index.index());
+            return left != index.left() || idx != index.index() ? new IndexExpression(index.tok(), left, idx) : index;
+        }
+        else if (node.getClass() == PrefixExpression.class) {
+            PrefixExpression prefix = (PrefixExpression) node;
+            Expression right = (Expression) this.rewrite(prefix.right());
+            return right != prefix.right() ? new PrefixExpression(prefix.tok(), prefix.op(), right) : prefix;
+        }
+        else if (node.getClass() == InfixExpression.class) {
+            InfixExpression infix = (InfixExpression) node;
+            Expression left = (Expression) this.rewrite(infix.left());
+            Expression right = (Expression) this.rewrite(infix.right());
+            return left != infix.left() || right != infix.right()
+                    ? new InfixExpression(infix.tok(), left, infix.op(), right) : infix;
+        }
+        else if (node.getClass() == IfExpression.class) {
+            IfExpression ifExpr = (IfExpression) node;
+            Expression condition = (Expression) this.rewrite(ifExpr.condition());
+            BlockStatement consequence = (BlockStatement) this.rewrite(ifExpr.consequence());
+            BlockStatement alternative = (BlockStatement) this.rewrite(ifExpr.alternative());
+            return condition != ifExpr.condition() || consequence != ifExpr.consequence()
+                    || alternative != ifExpr.alternative()
+                    ? new IfExpression(ifExpr.tok(), condition, consequence, alternative) : ifExpr;
+        }
+        else if (node.getClass() == FunctionLiteral.class) {
+            FunctionLiteral literal = (FunctionLiteral) node;
+            BlockStatement body = (BlockStatement) this.rewrite(literal.body());
+            if (body != literal.body())
+                literal = new FunctionLiteral(literal.tok(), literal.parameters(), body, literal.name());
+            return new FunctionSite(literal);
+        }
+        else if (node.getClass() == BlockStatement.class) {
+            BlockStatement block = (BlockStatement) node;
+            List<Statement> stmts = this.rewriteAll(block.statements());
+            return stmts != block.statements() ? new BlockStatement(block.tok(), stmts) : block;
+        }
+        else if (node.getClass() == ExpressionStatement.class) {
+            ExpressionStatement stmt = (ExpressionStatement) node;
+            Expression value = (Expression) this.rewrite(stmt.value());
+            return value != stmt.value() ? new ExpressionStatement(stmt.tok(), value) : stmt;
+        }
+        else if (node.getClass() == LetStatement.class) {
+            LetStatement let = (LetStatement) node;
+            Expression value = (Expression) this.rewrite(let.value());
+            return value != let.value() ? new LetStatement(let.tok(), let.name(), value) : let;
+        }
+        else if (node.getClass() == ReturnStatement.class) {
+            ReturnStatement ret = (ReturnStatement) node;
+            Expression value = (Expression) this.rewrite(ret.value());
+            return value != ret.value() ? new ReturnStatement(ret.tok(), value) : ret;
+        }
+        else if (node.getClass() == YieldStatement.class) {
+            YieldStatement yield = (YieldStatement) node;
+            Expression value = (Expression) this.rewrite(yield.value());
+            return value != yield.value() ? new YieldStatement(yield.tok(), value) : yield;
+        }
+        else if (node.getClass() == AssignStatement.class) {
+            AssignStatement assign = (AssignStatement) node;
+            Expression value = (Expression) this.rewrite(assign.value());
+            return value != assign.value() ? new AssignStatement(assign.tok(), assign.name(), value) : assign;
+        }
+        else if (node.getClass() == WhileStatement.class) {
+            WhileStatement loop = (WhileStatement) node;
+            Expression condition = (Expression) this.rewrite(loop.condition());
+            BlockStatement body = (BlockStatement) this.rewrite(loop.body());
+            return condition != loop.condition() || body != loop.body()
+                    ? new WhileStatement(loop.tok(), condition, body) : loop;
+        }
+        else if (node.getClass() == ForStatement.class) {
+            ForStatement loop = (ForStatement) node;
+            Expression iterable = (Expression) this.rewrite(loop.iterable());
+            Expression end = (Expression) this.rewrite(loop.end());
+            BlockStatement body = (BlockStatement) this.rewrite(loop.body());
+            return iterable != loop.iterable() || end != loop.end() || body != loop.body()
+                    ? new ForStatement(loop.tok(), loop.variable(), iterable, end, body) : loop;
+        }
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Node> List<T> rewriteAll(List<T> nodes) {
+        List<T> result = null;
+        for (int i = 0; i < nodes.size(); i++) {
+            T rewritten = (T) this.rewrite(nodes.get(i));
+            if (rewritten != nodes.get(i) && result == null)
+                result = new ArrayList<>(nodes.subList(0, i));
+            if (result != null)
+                result.add(rewritten);
+        }
+        return result != null ? result : nodes;
+    }
+}
@@ -0,0 +1,97 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.Entity;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Bounded LRU cache for memoized calls. The key space is split over several
+ * independently locked segments, so threads calling the same memoized function
+ * only contend when their arguments hash into the same segment.
+ */
+public class MemoCache {
+
+    public static final int DEFAULT_SIZE = 1024;
+    private static final int MAX_STRIPES = 16;
+
+    private final Segment[] segments;
+    private final int maxSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public MemoCache(int pMaxSize) {
+        this.maxSize = pMaxSize;
+        int stripes = Math.min(MAX_STRIPES, pMaxSize);
+        int perSegment = (pMaxSize + stripes - 1) / stripes;
+        this.segments = new Segment[stripes];
+        for (int i = 0; i < stripes; i++)
+            this.segments[i] = new Segment(perSegment);
+    }
+
+    public Entity get(List<Entity> key) {
+        Segment seg = this.segmentFor(key);
+        Entity result;
+        synchronized (seg) {
+            result = seg.get(key);
+        }
+        if (result != null)
+            this.hits.increment();
+        else
+            this.misses.increment();
+        return result;
+    }
+
+    public void put(List<Entity> key, Entity value) {
+        Segment seg = this.segmentFor(key);
+        synchronized (seg) {
+            seg.put(key, value);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment seg: this.segments) {
+            synchronized (seg) {
+                size += seg.size();
+            }
+        }
+        return size;
+    }
+
+    public int maxSize() { return this.maxSize; }
+
+    public long hits() { return this.hits.sum(); }
+
+    public long misses() { return this.misses.sum(); }
+
+    public long evictions() { return this.evictions.sum(); }
+
+    private Segment segmentFor(List<Entity> key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return this.segments[(h & 0x7fffffff) % this.segments.length];
+    }
+
+    private class Segment extends LinkedHashMap<List<Entity>, Entity> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Segment(int pCapacity) {
+            super(16, 0.75f, true);
+            this.capacity = pCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Entity>, Entity> eldest) {
+            if (this.size() > this.capacity) {
+                MemoCache.this.evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
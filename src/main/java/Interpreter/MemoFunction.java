@@ -0,0 +1,34 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.BuiltInFunction;
+import Interpreter.ObjSystem.Entity;
+import Interpreter.ObjSystem.EntityType;
+
+import java.util.List;
+
+public record MemoFunction(Entity fn, MemoCache cache) implements BuiltInFunction {
+
+    @Override
+    public Entity parse(Entity... args) {
+        // arrays, maps, iterators and channels change under the key, calls with them bypass the cache
+        for (Entity arg: args) {
+            if (isMutable(arg))
+                return Interpreter.applyFunction(this.fn, args);
+        }
+        List<Entity> key = List.of(args);
+        Entity result = this.cache.get(key);
+        if (result != null)
+            return result;
+        result = Interpreter.applyFunction(this.fn, args);
+        // errors are not cached, so a later call with the same arguments can still succeed
+        if (result != null && result.Type() != EntityType.ERROR_OBJ)
+            this.cache.put(key, result);
+        return result;
+    }
+
+    private static boolean isMutable(Entity arg) {
+        EntityType type = arg.Type();
+        return type == EntityType.ARRAY_OBJ || type == EntityType.MAP_OBJ || type == EntityType.ITERATOR_OBJ
+                || type == EntityType.CHANNEL_OBJ;
+    }
+}
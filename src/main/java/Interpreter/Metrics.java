@@ -0,0 +1,143 @@
+package Interpreter;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Interpreter counters exposed as the MBean "Karaoke:type=Interpreter".
+ * Counting is off unless enabled with -Dkaraoke.metrics=true or through the
+ * Enabled attribute; every hook checks the flag before touching a counter.
+ * Starting the platform MBean server takes longer than a short script runs, so
+ * the MBean is only registered when karaoke.metrics is set, to either value, or
+ * the JVM was started with a JMX agent.
+ */
+public final class Metrics implements MetricsMXBean {
+
+    public static volatile boolean enabled = Boolean.getBoolean("karaoke.metrics");
+
+    private static final Map<String, LongAdder> nodeCounts = new ConcurrentHashMap<>();
+    private static final ClassValue<LongAdder> nodeCounters = new ClassValue<>() {
+        @Override
+        protected LongAdder computeValue(Class<?> type) {
+            return nodeCounts.computeIfAbsent(type.getSimpleName(), k -> new LongAdder());
+        }
+    };
+    private static final LongAdder calls = new LongAdder();
+    private static final LongAdder lookups = new LongAdder();
+    private static final LongAdder lookupDepth = new LongAdder();
+    private static final LongAdder intAllocs = new LongAdder();
+    private static final LongAdder stringAllocs = new LongAdder();
+    private static final LongAdder arrayAllocs = new LongAdder();
+    private static final LongAdder errors = new LongAdder();
+    private static final LongAccumulator peakDepth = new LongAccumulator(Long::max, 0);
+    // current call depth and the peak since takeThreadPeakDepth() of the thread
+    private static final ThreadLocal<int[]> callDepth = ThreadLocal.withInitial(() -> new int[2]);
+
+    public static void register() {
+        if (System.getProperty("karaoke.metrics") == null && System.getProperty("com.sun.management.jmxremote") == null
+                && System.getProperty("com.sun.management.jmxremote.port") == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(), new ObjectName("Karaoke:type=Interpreter"));
+        } catch (InstanceAlreadyExistsException ignored) {
+        } catch (JMException e) {
+            System.err.println("Karaoke metrics could not be registered: " + e.getMessage());
+        }
+    }
+
+    public static void nodeEvaluated(Class<?> type) { nodeCounters.get(type).increment(); }
+
+    public static void envLookup(int depth) {
+        lookups.increment();
+        lookupDepth.add(depth);
+    }
+
+    public static void intAllocated() { intAllocs.increment(); }
+
+    public static void stringAllocated() { stringAllocs.increment(); }
+
+    public static void arrayAllocated() { arrayAllocs.increment(); }
+
+    public static void errorCreated() { errors.increment(); }
+
+    public static void enterCall() {
+        calls.increment();
+        int[] depth = callDepth.get();
+        depth[0]++;
+        if (depth[0] > depth[1])
+            depth[1] = depth[0];
+        peakDepth.accumulate(depth[0]);
+    }
+
+    public static void exitCall() {
+        int[] depth = callDepth.get();
+        // the flag may have been switched on in the middle of a call
+        if (depth[0] > 0)
+            depth[0]--;
+    }
+
+    /* Peak call depth of the current thread since the last call, leaving the shared counters alone. */
+    public static int takeThreadPeakDepth() {
+        int[] depth = callDepth.get();
+        int peak = depth[1];
+        depth[1] = depth[0];
+        return peak;
+    }
+
+    @Override
+    public boolean isEnabled() { return enabled; }
+
+    @Override
+    public void setEnabled(boolean pEnabled) { enabled = pEnabled; }
+
+    @Override
+    public Map<String, Long> getNodesEvaluated() {
+        Map<String, Long> result = new TreeMap<>();
+        nodeCounts.forEach((name, count) -> result.put(name, count.sum()));
+        return result;
+    }
+
+    @Override
+    public long getFunctionCalls() { return calls.sum(); }
+
+    @Override
+    public long getEnvironmentLookups() { return lookups.sum(); }
+
+    @Override
+    public long getEnvironmentDepthWalked() { return lookupDepth.sum(); }
+
+    @Override
+    public long getIntegerAllocations() { return intAllocs.sum(); }
+
+    @Override
+    public long getStringAllocations() { return stringAllocs.sum(); }
+
+    @Override
+    public long getArrayAllocations() { return arrayAllocs.sum(); }
+
+    @Override
+    public long getErrors() { return errors.sum(); }
+
+    @Override
+    public long getPeakCallDepth() { return peakDepth.get(); }
+
+    @Override
+    public void reset() {
+        nodeCounts.values().forEach(LongAdder::reset);
+        calls.reset();
+        lookups.reset();
+        lookupDepth.reset();
+        intAllocs.reset();
+        stringAllocs.reset();
+        arrayAllocs.reset();
+        errors.reset();
+        peakDepth.reset();
+    }
+}
@@ -0,0 +1,18 @@
+package Interpreter;
+
+import java.util.Map;
+
+public interface MetricsMXBean {
+    boolean isEnabled();
+    void setEnabled(boolean pEnabled);
+    Map<String, Long> getNodesEvaluated();
+    long getFunctionCalls();
+    long getEnvironmentLookups();
+    long getEnvironmentDepthWalked();
+    long getIntegerAllocations();
+    long getStringAllocations();
+    long getArrayAllocations();
+    long getErrors();
+    long getPeakCallDepth();
+    void reset();
+}
@@ -1,5 +1,8 @@
 package Interpreter.ObjSystem;
 
+import Interpreter.Metrics;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -8,9 +11,13 @@ public class ArrayObj implements Entity {
     List<Entity> value = new ArrayList<>(0);
 
     public ArrayObj(){
+        if (Metrics.enabled)
+            Metrics.arrayAllocated();
     }
     public ArrayObj(List<Entity> pList) {
         this.value = pList;
+        if (Metrics.enabled)
+            Metrics.arrayAllocated();
     }
 
     public List<Entity> value(){
@@ -24,7 +31,17 @@ public class ArrayObj implements Entity {
 
     @Override
     public String Inspect() {
-        var elems = this.value.stream().map(Entity::Inspect).toList();
-        return "[" + String.join(", ", elems) + "]";
+        return Inspection.toString(this);
+    }
+
+    @Override
+    public void inspect(Appendable out) throws IOException {
+        out.append('[');
+        for (int i = 0; i < this.value.size(); i++) {
+            if (i > 0)
+                out.append(", ");
+            this.value.get(i).inspect(out);
+        }
+        out.append(']');
     }
 }
@@ -1,5 +1,48 @@
 package Interpreter.ObjSystem;
 
+/*
+ * Builtins are called through the fixed-arity entry points for up to four arguments,
+ * so no argument array has to be built. The defaults route everything through the
+ * variadic parse; the nested interfaces do the opposite for builtins of a fixed arity,
+ * whose argument count is checked once by the caller.
+ */
 public interface BuiltInFunction {
     Entity parse(Entity... args);
+
+    /* Number of arguments the builtin takes, or -1 if it checks them itself. */
+    default int arity() { return -1; }
+
+    default Entity call0() { return this.parse(); }
+
+    default Entity call1(Entity a) { return this.parse(a); }
+
+    default Entity call2(Entity a, Entity b) { return this.parse(a, b); }
+
+    default Entity call3(Entity a, Entity b, Entity c) { return this.parse(a, b, c); }
+
+    default Entity call4(Entity a, Entity b, Entity c, Entity d) { return this.parse(a, b, c, d); }
+
+    interface Unary extends BuiltInFunction {
+        Entity call1(Entity a);
+
+        default int arity() { return 1; }
+
+        default Entity parse(Entity... args) { return this.call1(args[0]); }
+    }
+
+    interface Binary extends BuiltInFunction {
+        Entity call2(Entity a, Entity b);
+
+        default int arity() { return 2; }
+
+        default Entity parse(Entity... args) { return this.call2(args[0], args[1]); }
+    }
+
+    interface Ternary extends BuiltInFunction {
+        Entity call3(Entity a, Entity b, Entity c);
+
+        default int arity() { return 3; }
+
+        default Entity parse(Entity... args) { return this.call3(args[0], args[1], args[2]); }
+    }
 }
@@ -0,0 +1,38 @@
+package Interpreter.ObjSystem;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+/*
+ * Bounded queue between tasks. send() blocks while the channel is full and recv()
+ * while it is empty; a channel of capacity 0 hands every value over directly.
+ */
+public final class ChannelObj implements Entity {
+
+    private final BlockingQueue<Entity> queue;
+    private final int capacity;
+
+    public ChannelObj(int pCapacity) {
+        this.queue = pCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(pCapacity);
+        this.capacity = pCapacity;
+    }
+
+    public void send(Entity value) throws InterruptedException {
+        this.queue.put(value);
+    }
+
+    public Entity recv() throws InterruptedException {
+        return this.queue.take();
+    }
+
+    @Override
+    public EntityType Type() {
+        return EntityType.CHANNEL_OBJ;
+    }
+
+    @Override
+    public String Inspect() {
+        return "Channel(" + this.capacity + ")";
+    }
+}
@@ -1,9 +1,89 @@
 package Interpreter.ObjSystem;
 
+import Interpreter.FunctionScope;
+
+/*
+ * Frame of a function call. Bindings are kept in parallel arrays instead of a map:
+ * the names start out as the parameter names shared by every call of the function,
+ * and are only copied once the body declares a var of its own. Later bindings of
+ * the same name win, like repeated puts into a map. The scope describes which names
+ * the function can still bind, it is null for frames of unknown origin.
+ */
 public class EnclosedEnvironment extends Environment {
 
+    private static final String[] NO_NAMES = new String[0];
+
+    private String[] names;
+    private Entity[] values;
+    private int size;
+    private boolean sharedNames;
+    private final FunctionScope scope;
+
     public EnclosedEnvironment(Environment pOuter) {
-        super();
-        this.outer = pOuter;
+        this(pOuter, NO_NAMES, new Entity[0], null);
+    }
+
+    /* The values array is taken over by the frame, the names array is shared. */
+    public EnclosedEnvironment(Environment pOuter, String[] pNames, Entity[] pValues, FunctionScope pScope) {
+        super(pOuter);
+        this.scope = pScope;
+        this.names = pNames;
+        this.values = pValues;
+        this.size = pNames.length;
+        this.sharedNames = true;
+    }
+
+    public Entity argument(int index) {
+        return this.values[index];
+    }
+
+    public String name(int index) {
+        return this.names[index];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public FunctionScope scope() {
+        return this.scope;
+    }
+
+    @Override
+    public Entity getLocal(String key) {
+        int i = this.indexOf(key);
+        return i >= 0 ? this.values[i] : null;
+    }
+
+    @Override
+    public void set(String key, Entity value) {
+        int i = this.indexOf(key);
+        if (i >= 0) {
+            this.values[i] = value;
+            return;
+        }
+        if (this.sharedNames || this.size == this.names.length) {
+            int capacity = Math.max(4, this.size * 2);
+            String[] newNames = new String[capacity];
+            System.arraycopy(this.names, 0, newNames, 0, this.size);
+            this.names = newNames;
+            this.sharedNames = false;
+        }
+        if (this.size >= this.values.length) {
+            Entity[] newValues = new Entity[this.names.length];
+            System.arraycopy(this.values, 0, newValues, 0, this.size);
+            this.values = newValues;
+        }
+        this.names[this.size] = key;
+        this.values[this.size] = value;
+        this.size++;
+    }
+
+    private int indexOf(String key) {
+        for (int i = this.size - 1; i >= 0; i--) {
+            if (this.names[i] == key || this.names[i].equals(key))
+                return i;
+        }
+        return -1;
     }
 }
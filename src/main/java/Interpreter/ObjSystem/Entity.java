@@ -1,6 +1,13 @@
 package Interpreter.ObjSystem;
 
+import java.io.IOException;
+
 public interface Entity {
     EntityType Type();
     String Inspect();
+
+    /* Writes the text of Inspect() to out; containers override it so their text is never built as a whole. */
+    default void inspect(Appendable out) throws IOException {
+        out.append(this.Inspect());
+    }
 }
@@ -10,7 +10,10 @@ public enum EntityType {
     STRING_OBJ,
     BUILTIN_OBJ,
     ARRAY_OBJ,
-    MAP_OBJ;
+    MAP_OBJ,
+    ITERATOR_OBJ,
+    FUTURE_OBJ,
+    CHANNEL_OBJ;
 
     @Override
     public String toString() {
@@ -25,6 +28,9 @@ public enum EntityType {
             case BUILTIN_OBJ -> {return "BUILTIN"; }
             case ARRAY_OBJ -> {return "ARRAY"; }
             case MAP_OBJ -> {return "MAP"; }
+            case ITERATOR_OBJ -> {return "ITERATOR"; }
+            case FUTURE_OBJ -> {return "FUTURE"; }
+            case CHANNEL_OBJ -> {return "CHANNEL"; }
         }
         return "";
     }
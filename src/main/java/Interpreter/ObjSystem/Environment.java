@@ -1,26 +1,79 @@
 package Interpreter.ObjSystem;
 
-import java.util.HashMap;
+import Interpreter.Metrics;
+
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import static Interpreter.Interpreter.NULL;
 
 public class Environment {
     Map<String, Entity> store;
     Environment outer = null;
+    Entity returnValue = null;
 
+    // the global environment is read by spawned tasks while the script may still define names
     public Environment(){
-        this.store = new HashMap<>(0);
+        this.store = new ConcurrentHashMap<>();
+    }
+
+    Environment(Environment pOuter) {
+        this.store = null;
+        this.outer = pOuter;
     }
 
     public Entity get(String key) {
-        Entity result = this.store.getOrDefault(key, NULL);
-        if (result == NULL && this.outer != null) {
-            return this.outer.get(key);
+        Environment env = this;
+        int depth = 0;
+        Entity result = env.getLocal(key);
+        while ((result == null || result == NULL) && env.outer != null) {
+            env = env.outer;
+            depth++;
+            result = env.getLocal(key);
         }
-        return result;
+        if (Metrics.enabled)
+            Metrics.envLookup(depth);
+        return result != null ? result : NULL;
+    }
+
+    public Environment outer() {
+        return this.outer;
+    }
+
+    /* Binding of the key in this environment alone, or null if there is none. */
+    public Entity getLocal(String key) {
+        return this.store.get(key);
+    }
+
+    /* Bindings of the global environment; frames are read through EnclosedEnvironment. */
+    public Map<String, Entity> bindings() {
+        return Collections.unmodifiableMap(this.store);
     }
 
     public void set(String key, Entity value) {
-        this.store.put(key, value);
+        // the concurrent store takes no null, and a lookup treats NULL like a missing binding anyway
+        this.store.put(key, value != null ? value : NULL);
+    }
+
+    /* Rebinds the nearest visible binding of the key, returns false if there is none. */
+    public boolean assign(String key, Entity value) {
+        for (Environment env = this; env != null; env = env.outer) {
+            Entity current = env.getLocal(key);
+            if (current != null && current != NULL) {
+                env.set(key, value);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void setReturnValue(Entity value) {
+        this.returnValue = value;
+    }
+
+    public Entity takeReturnValue() {
+        Entity value = this.returnValue;
+        this.returnValue = null;
+        return value;
     }
 }
@@ -1,6 +1,26 @@
 package Interpreter.ObjSystem;
 
-public record ErrorMsg(String message) implements Entity {
+/*
+ * The message is only formatted when it is first read, so errors that are
+ * propagated and never displayed do not pay for String.format.
+ */
+public final class ErrorMsg implements Entity {
+
+    private final String format;
+    private final Object[] args;
+    private String message = null;
+
+    public ErrorMsg(String pFormat, Object... pArgs) {
+        this.format = pFormat;
+        this.args = pArgs;
+    }
+
+    public String message() {
+        if (this.message == null)
+            this.message = this.args.length == 0 ? this.format : String.format(this.format, this.args);
+        return this.message;
+    }
+
     @Override
     public EntityType Type() {
         return EntityType.ERROR_OBJ;
@@ -8,6 +28,6 @@ public record ErrorMsg(String message) implements Entity {
 
     @Override
     public String Inspect() {
-        return "ERROR: " + this.message;
+        return "ERROR: " + this.message();
     }
 }
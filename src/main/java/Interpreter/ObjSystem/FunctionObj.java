@@ -1,11 +1,43 @@
 package Interpreter.ObjSystem;
 
+import Interpreter.FunctionScope;
+import Parser.AST.Expressions.FunctionLiteral;
 import Parser.AST.Expressions.Identifier;
 import Parser.AST.Statements.BlockStatement;
 
 import java.util.List;
 
-public record FunctionObj(List<Identifier> parameters, BlockStatement body, Environment env) implements Entity {
+public class FunctionObj implements Entity {
+
+    private final FunctionLiteral literal;
+    private final Environment env;
+    private final FunctionScope scope;
+
+    public FunctionObj(FunctionLiteral pLiteral, Environment pEnv, FunctionScope pScope) {
+        this.literal = pLiteral;
+        this.env = pEnv;
+        this.scope = pScope;
+    }
+
+    public FunctionLiteral literal() {
+        return this.literal;
+    }
+
+    public Environment env() {
+        return this.env;
+    }
+
+    public FunctionScope scope() {
+        return this.scope;
+    }
+
+    public List<Identifier> parameters() {
+        return this.literal.parameters();
+    }
+
+    public BlockStatement body() {
+        return this.literal.body();
+    }
 
     @Override
     public EntityType Type() {
@@ -15,8 +47,8 @@ public record FunctionObj(List<Identifier> parameters, BlockStatement body, Envi
     @Override
     public String Inspect() {
         return "fn(" +
-                String.join(", ", this.parameters) +
+                String.join(", ", this.parameters()) +
                 ") {\n" +
-                this.body.toString();
+                this.body().toString();
     }
 }
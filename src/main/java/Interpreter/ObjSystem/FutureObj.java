@@ -0,0 +1,27 @@
+package Interpreter.ObjSystem;
+
+import java.util.concurrent.Future;
+
+/* Result of a function started with spawn(), read with await(). */
+public final class FutureObj implements Entity {
+
+    private final Future<Entity> future;
+
+    public FutureObj(Future<Entity> pFuture) {
+        this.future = pFuture;
+    }
+
+    public Future<Entity> future() {
+        return this.future;
+    }
+
+    @Override
+    public EntityType Type() {
+        return EntityType.FUTURE_OBJ;
+    }
+
+    @Override
+    public String Inspect() {
+        return this.future.isDone() ? "Future(done)" : "Future";
+    }
+}
@@ -0,0 +1,91 @@
+package Interpreter.ObjSystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/*
+ * Helpers around Entity.inspect(Appendable). write() stops a value after a number of
+ * characters and marks the cut with "...", so even a huge nested array costs no more
+ * than the limit to print; the traversal is abandoned at the cut instead of running
+ * to the end.
+ */
+public final class Inspection {
+
+    private Inspection() {}
+
+    /* Text of an entity that builds it through inspect(Appendable). */
+    static String toString(Entity entity) {
+        StringBuilder out = new StringBuilder();
+        try {
+            entity.inspect(out);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /* Writes the entity to out, cut after limit characters if limit is positive. Returns false if it was cut. */
+    public static boolean write(Entity entity, Appendable out, long limit) throws IOException {
+        if (limit <= 0) {
+            entity.inspect(out);
+            return true;
+        }
+        try {
+            entity.inspect(new Limited(out, limit));
+            return true;
+        } catch (Truncated e) {
+            out.append("...");
+            return false;
+        }
+    }
+
+    private static final class Truncated extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        Truncated() {
+            super(null, null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final class Limited implements Appendable {
+        private final Appendable out;
+        private long remaining;
+
+        Limited(Appendable pOut, long pLimit) {
+            this.out = pOut;
+            this.remaining = pLimit;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            return this.append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            if (end - start > this.remaining) {
+                this.out.append(csq, start, start + (int) this.remaining);
+                this.remaining = 0;
+                throw new Truncated();
+            }
+            this.out.append(csq, start, end);
+            this.remaining -= end - start;
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            if (this.remaining == 0)
+                throw new Truncated();
+            this.out.append(c);
+            this.remaining--;
+            return this;
+        }
+    }
+}
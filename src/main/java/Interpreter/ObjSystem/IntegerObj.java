@@ -1,7 +1,14 @@
 package Interpreter.ObjSystem;
 
+import Interpreter.Metrics;
+
 public record IntegerObj(int value) implements Entity {
 
+    public IntegerObj {
+        if (Metrics.enabled)
+            Metrics.intAllocated();
+    }
+
     @Override
     public EntityType Type() {
         return EntityType.INT_OBJ;
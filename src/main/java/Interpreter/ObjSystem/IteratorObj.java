@@ -0,0 +1,44 @@
+package Interpreter.ObjSystem;
+
+import static Interpreter.Interpreter.NULL;
+
+/*
+ * Lazy sequence consumed with next(). The source returns null once it is exhausted,
+ * after which, or after it returned an error, every call yields NULL.
+ */
+public final class IteratorObj implements Entity {
+
+    public interface Source {
+        Entity next();
+    }
+
+    private final Source source;
+    private boolean done = false;
+
+    public IteratorObj(Source pSource) {
+        this.source = pSource;
+    }
+
+    public Entity next() {
+        if (this.done)
+            return NULL;
+        Entity element = this.source.next();
+        if (element == null) {
+            this.done = true;
+            return NULL;
+        }
+        if (element.getClass() == ErrorMsg.class)
+            this.done = true;
+        return element;
+    }
+
+    @Override
+    public EntityType Type() {
+        return EntityType.ITERATOR_OBJ;
+    }
+
+    @Override
+    public String Inspect() {
+        return "Iterator";
+    }
+}
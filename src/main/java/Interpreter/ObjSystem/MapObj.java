@@ -1,5 +1,6 @@
 package Interpreter.ObjSystem;
 
+import java.io.IOException;
 import java.util.Map;
 
 public record MapObj(Map<Entity, Entity> value) implements Entity {
@@ -10,10 +11,21 @@ public record MapObj(Map<Entity, Entity> value) implements Entity {
 
     @Override
     public String Inspect() {
-        StringBuilder out = new StringBuilder("{");
+        return Inspection.toString(this);
+    }
+
+    @Override
+    public void inspect(Appendable out) throws IOException {
+        out.append('{');
+        boolean first = true;
         for (Map.Entry<Entity, Entity> entry : this.value.entrySet()){
-            out.append(entry.getKey().Inspect()).append(":").append(entry.getValue().Inspect()).append(", ");
+            if (!first)
+                out.append(", ");
+            entry.getKey().inspect(out);
+            out.append(':');
+            entry.getValue().inspect(out);
+            first = false;
         }
-        return out.substring(0, out.length() - 2) + "}";
+        out.append('}');
     }
 }
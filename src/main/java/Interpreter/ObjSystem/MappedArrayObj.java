@@ -0,0 +1,114 @@
+package Interpreter.ObjSystem;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/*
+ * Array of 32-bit little-endian integers backed by a memory-mapped file. The file is
+ * mapped in chunks of at most 1 GiB, and elements are only boxed into IntegerObjs
+ * when read, so the heap footprint does not grow with the size of the file. tail()
+ * returns a view over the same mapping instead of a copy.
+ */
+public final class MappedArrayObj extends ArrayObj {
+
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+
+    public enum Mode { READ_ONLY, READ_WRITE, COPY_ON_WRITE }
+
+    private final MappedByteBuffer[] chunks;
+    private final long offset;
+    private final int size;
+    private final Mode mode;
+
+    private MappedArrayObj(MappedByteBuffer[] pChunks, long pOffset, int pSize, Mode pMode) {
+        super(null);
+        this.chunks = pChunks;
+        this.offset = pOffset;
+        this.size = pSize;
+        this.mode = pMode;
+        this.value = new View();
+    }
+
+    public static MappedArrayObj map(Path path, Mode mode) throws IOException {
+        // a private mapping also needs a channel opened for writing, though the file is never written
+        StandardOpenOption[] options = mode != Mode.READ_ONLY
+                ? new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[] {StandardOpenOption.READ};
+        FileChannel.MapMode mapMode = switch (mode) {
+            case READ_ONLY -> FileChannel.MapMode.READ_ONLY;
+            case READ_WRITE -> FileChannel.MapMode.READ_WRITE;
+            case COPY_ON_WRITE -> FileChannel.MapMode.PRIVATE;
+        };
+        // the channel can be closed right away, the mappings stay valid until they are collected
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            long bytes = channel.size();
+            if (bytes % Integer.BYTES != 0)
+                throw new IOException("size of " + path + " is not a multiple of 4 bytes");
+            if (bytes / Integer.BYTES > Integer.MAX_VALUE)
+                throw new IOException(path + " holds more than " + Integer.MAX_VALUE + " integers");
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((bytes + CHUNK_BYTES - 1) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << CHUNK_SHIFT;
+                chunks[i] = channel.map(mapMode, start, Math.min(CHUNK_BYTES, bytes - start));
+                chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedArrayObj(chunks, 0, (int) (bytes / Integer.BYTES), mode);
+        }
+    }
+
+    public Mode mode() {
+        return this.mode;
+    }
+
+    public int getInt(int index) {
+        long pos = (this.offset + index) * Integer.BYTES;
+        return this.chunks[(int) (pos >>> CHUNK_SHIFT)].getInt((int) (pos & (CHUNK_BYTES - 1)));
+    }
+
+    public void setInt(int index, int val) {
+        long pos = (this.offset + index) * Integer.BYTES;
+        this.chunks[(int) (pos >>> CHUNK_SHIFT)].putInt((int) (pos & (CHUNK_BYTES - 1)), val);
+    }
+
+    /* Elements after the first one, sharing the mapping. */
+    public MappedArrayObj tail() {
+        return new MappedArrayObj(this.chunks, this.offset + 1, this.size - 1, this.mode);
+    }
+
+    /* Writes changes of a READ_WRITE mapping back to the file. */
+    public void flush() {
+        if (this.mode == Mode.READ_WRITE) {
+            for (MappedByteBuffer chunk: this.chunks)
+                chunk.force();
+        }
+    }
+
+    private final class View extends AbstractList<Entity> implements RandomAccess {
+
+        @Override
+        public Entity get(int index) {
+            if (index < 0 || index >= MappedArrayObj.this.size)
+                throw new IndexOutOfBoundsException(index);
+            return new IntegerObj(MappedArrayObj.this.getInt(index));
+        }
+
+        @Override
+        public Entity set(int index, Entity element) {
+            Entity previous = this.get(index);
+            MappedArrayObj.this.setInt(index, ((IntegerObj) element).value());
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            return MappedArrayObj.this.size;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package Interpreter.ObjSystem;
 
+import java.io.IOException;
+
 public record ReturnValue(Entity value) implements Entity {
 
     @Override
@@ -11,4 +13,9 @@ public record ReturnValue(Entity value) implements Entity {
     public String Inspect() {
         return this.value.Inspect();
     }
+
+    @Override
+    public void inspect(Appendable out) throws IOException {
+        this.value.inspect(out);
+    }
 }
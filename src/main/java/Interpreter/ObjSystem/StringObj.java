@@ -1,6 +1,13 @@
 package Interpreter.ObjSystem;
 
+import Interpreter.Metrics;
+
 public record StringObj(String value) implements Entity {
+
+    public StringObj {
+        if (Metrics.enabled)
+            Metrics.stringAllocated();
+    }
     @Override
     public EntityType Type() {
         return EntityType.STRING_OBJ;
@@ -0,0 +1,32 @@
+package Interpreter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/*
+ * Buffered standard output for print() and the results echoed by Karaoke. Values are
+ * written through Entity.inspect, so nothing bigger than the buffer is held in memory
+ * while a large structure is printed. The buffer is flushed when it is full and after
+ * every script or REPL line; anything else writing to System.out has to flush first.
+ */
+public final class Output {
+
+    private static final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()), 1 << 16);
+
+    private Output() {}
+
+    public static Writer writer() {
+        return out;
+    }
+
+    public static void flush() {
+        try {
+            out.flush();
+        } catch (IOException ignored) {
+            // standard output is gone, there is nobody left to tell
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package Interpreter;
+
+import Parser.AST.Expressions.FunctionLiteral;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/*
+ * Guest-function profiler. Calls are attributed to the FunctionLiteral they run,
+ * so every closure created from the same literal shares one entry. Each thread
+ * records into its own call tree; the trees are merged when the report is written.
+ */
+public final class Profiler {
+
+    public static boolean enabled = false;
+
+    private static final List<ThreadProfile> profiles = new ArrayList<>(0);
+    private static final ThreadLocal<ThreadProfile> current = ThreadLocal.withInitial(() -> {
+        ThreadProfile profile = new ThreadProfile();
+        synchronized (profiles) {
+            profiles.add(profile);
+        }
+        return profile;
+    });
+
+    private Profiler() {}
+
+    public static void enter(FunctionLiteral fn) {
+        current.get().enter(fn, System.nanoTime());
+    }
+
+    public static void exit() {
+        current.get().exit(System.nanoTime());
+    }
+
+    public static void report(PrintStream out, Path collapsedStacks) throws IOException {
+        Map<FunctionLiteral, Stats> stats = new IdentityHashMap<>();
+        Map<String, Long> stacks = new TreeMap<>();
+        synchronized (profiles) {
+            for (ThreadProfile profile: profiles) {
+                profile.stats.forEach((fn, s) -> stats.computeIfAbsent(fn, k -> new Stats()).merge(s));
+                profile.root.collapse("", stacks);
+            }
+        }
+
+        List<Map.Entry<FunctionLiteral, Stats>> rows = new ArrayList<>(stats.entrySet());
+        rows.sort((a, b) -> Long.compare(b.getValue().selfNanos, a.getValue().selfNanos));
+        out.printf("%-40s %10s %12s %12s%n", "function", "calls", "total ms", "self ms");
+        for (Map.Entry<FunctionLiteral, Stats> row: rows) {
+            Stats s = row.getValue();
+            out.printf("%-40s %10d %12.3f %12.3f%n", row.getKey().displayName(), s.calls,
+                    s.totalNanos / 1e6, s.selfNanos / 1e6);
+        }
+
+        // one line per stack: frames separated by ';' followed by the self time in microseconds
+        try (Writer writer = Files.newBufferedWriter(collapsedStacks, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> stack: stacks.entrySet()) {
+                long micros = stack.getValue() / 1000;
+                if (micros > 0)
+                    writer.write(stack.getKey() + " " + micros + "\n");
+            }
+        }
+        out.println("collapsed stacks written to " + collapsedStacks);
+    }
+
+    private static final class Stats {
+        long calls;
+        long totalNanos;
+        long selfNanos;
+        int active;
+
+        void merge(Stats other) {
+            this.calls += other.calls;
+            this.totalNanos += other.totalNanos;
+            this.selfNanos += other.selfNanos;
+        }
+    }
+
+    private static final class CallNode {
+        final FunctionLiteral fn;
+        final Map<FunctionLiteral, CallNode> children = new IdentityHashMap<>();
+        long selfNanos;
+
+        CallNode(FunctionLiteral pFn) {
+            this.fn = pFn;
+        }
+
+        void collapse(String prefix, Map<String, Long> stacks) {
+            String path = prefix;
+            if (this.fn != null) {
+                path = prefix.isEmpty() ? this.fn.displayName() : prefix + ";" + this.fn.displayName();
+                stacks.merge(path, this.selfNanos, Long::sum);
+            }
+            for (CallNode child: this.children.values())
+                child.collapse(path, stacks);
+        }
+    }
+
+    private static final class Frame {
+        final CallNode node;
+        final Stats stats;
+        final long start;
+        long childNanos;
+
+        Frame(CallNode pNode, Stats pStats, long pStart) {
+            this.node = pNode;
+            this.stats = pStats;
+            this.start = pStart;
+        }
+    }
+
+    private static final class ThreadProfile {
+        final Map<FunctionLiteral, Stats> stats = new IdentityHashMap<>();
+        final CallNode root = new CallNode(null);
+        final ArrayDeque<Frame> frames = new ArrayDeque<>();
+
+        void enter(FunctionLiteral fn, long now) {
+            CallNode parent = this.frames.isEmpty() ? this.root : this.frames.peek().node;
+            CallNode node = parent.children.computeIfAbsent(fn, CallNode::new);
+            Stats s = this.stats.computeIfAbsent(fn, k -> new Stats());
+            s.calls++;
+            s.active++;
+            this.frames.push(new Frame(node, s, now));
+        }
+
+        void exit(long now) {
+            Frame frame = this.frames.pop();
+            long elapsed = now - frame.start;
+            long self = elapsed - frame.childNanos;
+            frame.node.selfNanos += self;
+            frame.stats.selfNanos += self;
+            // recursive activations only count towards the total time once
+            if (--frame.stats.active == 0)
+                frame.stats.totalNanos += elapsed;
+            if (!this.frames.isEmpty())
+                this.frames.peek().childNanos += elapsed;
+        }
+    }
+}
@@ -0,0 +1,681 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.*;
+import Lexer.Token.Token;
+import Lexer.Token.TokenType;
+import Parser.AST.Expression;
+import Parser.AST.Expressions.*;
+import Parser.AST.Node;
+import Parser.AST.Statement;
+import Parser.AST.Statements.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/*
+ * Writes an initialized global environment, with every function, closure and the
+ * syntax trees behind them, to a compact binary file and reads it back without
+ * lexing, parsing or evaluating anything.
+ *
+ * Integers are varints, strings are written once and referenced by index after that,
+ * and arrays, maps, functions, environments, function literals and blocks are written
+ * once and referenced by index, which keeps shared and cyclic structures intact. An
+ * environment is first written as a shell (kind, outer environment, names) and its
+ * values follow later, so a closure and the environment holding it can refer to each
+ * other. Builtins are written by name. Inline caches, compiled code and the contents
+ * of memo caches are not stored.
+ */
+public final class Snapshot {
+
+    private static final int MAGIC = 0x4B41534E;
+    private static final int VERSION = 1;
+
+    // entities
+    private static final byte NULL = 0, TRUE = 1, FALSE = 2, INT = 3, STRING = 4, ARRAY = 5, MAP = 6,
+            FUNCTION = 7, BUILTIN = 8, MEMO = 9, REF = 10;
+    // environments and their scopes
+    private static final byte GLOBAL_ENV = 11, FRAME_ENV = 12, NO_SCOPE = 13, CAPTURED_SCOPE = 14, FUNCTION_SCOPE = 15;
+    // syntax tree nodes, REF and NULL are shared with the entities
+    private static final byte ARRAY_LITERAL = 20, BOOLEAN_LITERAL = 21, CALL = 22, FUNCTION_LITERAL = 23,
+            IDENTIFIER = 24, IF = 25, INDEX = 26, INFIX = 27, INTEGER_LITERAL = 28, MAP_LITERAL = 29,
+            PREFIX = 30, STRING_LITERAL = 31, BLOCK = 32, EXPRESSION_STATEMENT = 33, LET = 34, RETURN = 35,
+            WHILE = 36, FOR = 37, ASSIGN = 38, YIELD = 39;
+
+    private Snapshot() {}
+
+    public static void save(Environment env, Path path) throws IOException {
+        Writer out = new Writer();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeEnv(env);
+        out.writePendingEnvs();
+        Files.write(path, Arrays.copyOf(out.buf, out.pos));
+    }
+
+    public static Environment load(Path path) throws IOException {
+        Reader in = new Reader(Files.readAllBytes(path));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException(path + " is not a snapshot");
+            if (in.readInt() != VERSION)
+                throw new IOException(path + " was written by an incompatible version");
+            Environment env = in.readEnv();
+            in.readPendingEnvs();
+            return env;
+        } catch (RuntimeException e) {
+            throw new IOException(path + " is corrupt: " + e, e);
+        } catch (StackOverflowError e) {
+            throw new IOException(path + " is nested too deeply", e);
+        }
+    }
+
+    private static final class Writer {
+        byte[] buf = new byte[1 << 16];
+        int pos = 0;
+        private final Map<Object, Integer> refs = new IdentityHashMap<>();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<Entity, String> builtinNames = new IdentityHashMap<>();
+        private final ArrayDeque<Environment> pendingEnvs = new ArrayDeque<>();
+
+        Writer() {
+            Interpreter.builtins.forEach((name, builtin) -> this.builtinNames.put(builtin, name));
+        }
+
+        void writeByte(int b) {
+            if (this.pos == this.buf.length)
+                this.buf = Arrays.copyOf(this.buf, this.buf.length * 2);
+            this.buf[this.pos++] = (byte) b;
+        }
+
+        void writeInt(int i) {
+            for (int shift = 24; shift >= 0; shift -= 8)
+                this.writeByte(i >>> shift);
+        }
+
+        void writeVarint(int i) {
+            while ((i & ~0x7F) != 0) {
+                this.writeByte((i & 0x7F) | 0x80);
+                i >>>= 7;
+            }
+            this.writeByte(i);
+        }
+
+        // 0 is null, 1 a new string, n + 2 the n-th string written before
+        void writeString(String s) {
+            if (s == null) {
+                this.writeVarint(0);
+                return;
+            }
+            Integer index = this.strings.get(s);
+            if (index != null) {
+                this.writeVarint(index + 2);
+                return;
+            }
+            this.strings.put(s, this.strings.size());
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            this.writeVarint(1);
+            this.writeVarint(bytes.length);
+            if (this.pos + bytes.length > this.buf.length)
+                this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length * 2, this.pos + bytes.length));
+            System.arraycopy(bytes, 0, this.buf, this.pos, bytes.length);
+            this.pos += bytes.length;
+        }
+
+        // writes a reference and returns true if the object was written before, registers it otherwise
+        boolean writeRef(Object obj) {
+            Integer id = this.refs.get(obj);
+            if (id != null) {
+                this.writeByte(REF);
+                this.writeVarint(id);
+                return true;
+            }
+            this.refs.put(obj, this.refs.size());
+            return false;
+        }
+
+        void writeEntity(Entity entity) throws IOException {
+            if (entity == null || entity == Interpreter.NULL)
+                this.writeByte(NULL);
+            else if (entity == Interpreter.TRUE)
+                this.writeByte(TRUE);
+            else if (entity == Interpreter.FALSE)
+                this.writeByte(FALSE);
+            else if (entity.getClass() == IntegerObj.class) {
+                this.writeByte(INT);
+                int value = ((IntegerObj) entity).value();
+                this.writeVarint((value << 1) ^ (value >> 31));
+            }
+            else if (entity.getClass() == StringObj.class) {
+                this.writeByte(STRING);
+                this.writeString(((StringObj) entity).value());
+            }
+            else if (entity.getClass() == BuiltIn.class && this.builtinNames.containsKey(entity)) {
+                this.writeByte(BUILTIN);
+                this.writeString(this.builtinNames.get(entity));
+            }
+            else if (this.writeRef(entity))
+                return;
+            else if (entity.getClass() == ArrayObj.class) {
+                this.writeByte(ARRAY);
+                List<Entity> elements = ((ArrayObj) entity).value();
+                this.writeVarint(elements.size());
+                for (Entity element: elements)
+                    this.writeEntity(element);
+            }
+            else if (entity.getClass() == MapObj.class) {
+                this.writeByte(MAP);
+                Map<Entity, Entity> pairs = ((MapObj) entity).value();
+                this.writeVarint(pairs.size());
+                for (Map.Entry<Entity, Entity> pair: pairs.entrySet()) {
+                    this.writeEntity(pair.getKey());
+                    this.writeEntity(pair.getValue());
+                }
+            }
+            else if (entity.getClass() == FunctionObj.class) {
+                this.writeByte(FUNCTION);
+                this.writeNode(((FunctionObj) entity).literal());
+                this.writeEnv(((FunctionObj) entity).env());
+            }
+            else if (entity.getClass() == BuiltIn.class && ((BuiltIn) entity).fn() instanceof MemoFunction memo) {
+                this.writeByte(MEMO);
+                this.writeEntity(memo.fn());
+                this.writeVarint(memo.cache().maxSize());
+            }
+            else throw new IOException(entity.getClass().getSimpleName() + " can't be written to a snapshot");
+        }
+
+        void writeEnv(Environment env) {
+            if (this.writeRef(env))
+                return;
+            if (env.getClass() == EnclosedEnvironment.class) {
+                EnclosedEnvironment frame = (EnclosedEnvironment) env;
+                this.writeByte(FRAME_ENV);
+                this.writeEnv(frame.outer());
+                FunctionScope scope = frame.scope();
+                if (scope == null)
+                    this.writeByte(NO_SCOPE);
+                else if (scope == FunctionScope.CAPTURED)
+                    this.writeByte(CAPTURED_SCOPE);
+                else {
+                    this.writeByte(FUNCTION_SCOPE);
+                    this.writeIdentifiers(scope.parameters());
+                    this.writeNode(scope.body());
+                }
+                this.writeVarint(frame.size());
+                for (int i = 0; i < frame.size(); i++)
+                    this.writeString(frame.name(i));
+            }
+            else this.writeByte(GLOBAL_ENV);
+            this.pendingEnvs.add(env);
+        }
+
+        void writePendingEnvs() throws IOException {
+            while (!this.pendingEnvs.isEmpty()) {
+                Environment env = this.pendingEnvs.poll();
+                if (env.getClass() == EnclosedEnvironment.class) {
+                    EnclosedEnvironment frame = (EnclosedEnvironment) env;
+                    for (int i = 0; i < frame.size(); i++)
+                        this.writeEntity(frame.argument(i));
+                }
+                else {
+                    Map<String, Entity> bindings = env.bindings();
+                    this.writeVarint(bindings.size());
+                    for (Map.Entry<String, Entity> binding: bindings.entrySet()) {
+                        this.writeString(binding.getKey());
+                        this.writeEntity(binding.getValue());
+                    }
+                }
+            }
+        }
+
+        void writeToken(Token tok) {
+            this.writeVarint(tok.type().ordinal());
+            this.writeString(tok.literal());
+            this.writeVarint(tok.line());
+            this.writeVarint(tok.column());
+        }
+
+        void writeIdentifiers(List<Identifier> identifiers) {
+            this.writeVarint(identifiers.size());
+            for (Identifier identifier: identifiers)
+                this.writeNode(identifier);
+        }
+
+        void writeNodes(List<? extends Node> nodes) {
+            this.writeVarint(nodes.size());
+            for (Node node: nodes)
+                this.writeNode(node);
+        }
+
+        void writeNode(Node node) {
+            if (node == null) {
+                this.writeByte(NULL);
+                return;
+            }
+            // function literals are shared by their closures, blocks by the scopes of frames
+            if ((node.getClass() == FunctionLiteral.class || node.getClass() == BlockStatement.class) && this.writeRef(node))
+                return;
+
+            if (node.getClass() == Identifier.class) {
+                this.writeByte(IDENTIFIER);
+                this.writeToken(((Identifier) node).tok());
+                this.writeString(((Identifier) node).value());
+            }
+            else if (node.getClass() == IntegerLiteral.class) {
+                this.writeByte(INTEGER_LITERAL);
+                this.writeToken(((IntegerLiteral) node).tok());
+                int value = ((IntegerLiteral) node).value();
+                this.writeVarint((value << 1) ^ (value >> 31));
+            }
+            else if (node.getClass() == BooleanLiteral.class) {
+                this.writeByte(BOOLEAN_LITERAL);
+                this.writeToken(((BooleanLiteral) node).tok());
+                this.writeByte(((BooleanLiteral) node).value() ? 1 : 0);
+            }
+            else if (node.getClass() == StringLiteral.class) {
+                this.writeByte(STRING_LITERAL);
+                this.writeToken(((StringLiteral) node).tok());
+                this.writeString(((StringLiteral) node).value());
+            }
+            else if (node.getClass() == ArrayLiteral.class) {
+                this.writeByte(ARRAY_LITERAL);
+                this.writeToken(((ArrayLiteral) node).tok());
+                this.writeNodes(((ArrayLiteral) node).elements());
+            }
+            else if (node.getClass() == MapLiteral.class) {
+                this.writeByte(MAP_LITERAL);
+                this.writeToken(((MapLiteral) node).tok());
+                Map<Expression, Expression> pairs = ((MapLiteral) node).pairs();
+                this.writeVarint(pairs.size());
+                for (Map.Entry<Expression, Expression> pair: pairs.entrySet()) {
+                    this.writeNode(pair.getKey());
+                    this.writeNode(pair.getValue());
+                }
+            }
+            else if (node.getClass() == IndexExpression.class) {
+                this.writeByte(INDEX);
+                this.writeToken(((IndexExpression) node).tok());
+                this.writeNode(((IndexExpression) node).left());
+                this.writeNode(((IndexExpression) node).index());
+            }
+            else if (node.getClass() == PrefixExpression.class) {
+                this.writeByte(PREFIX);
+                this.writeToken(((PrefixExpression) node).tok());
+                this.writeString(((PrefixExpression) node).op());
+                this.writeNode(((PrefixExpression) node).right());
+            }
+            else if (node.getClass() == InfixExpression.class) {
+                this.writeByte(INFIX);
+                this.writeToken(((InfixExpression) node).tok());
+                this.writeNode(((InfixExpression) node).left());
+                this.writeString(((InfixExpression) node).op());
+                this.writeNode(((InfixExpression) node).right());
+            }
+            else if (node.getClass() == IfExpression.class) {
+                this.writeByte(IF);
+                this.writeToken(((IfExpression) node).tok());
+                this.writeNode(((IfExpression) node).condition());
+                this.writeNode(((IfExpression) node).consequence());
+                this.writeNode(((IfExpression) node).alternative());
+            }
+            else if (node.getClass() == CallExpression.class) {
+                this.writeByte(CALL);
+                this.writeToken(((CallExpression) node).tok());
+                this.writeNode(((CallExpression) node).function());
+                this.writeNodes(((CallExpression) node).params());
+            }
+            else if (node.getClass() == CallSite.class)
+                this.writeNode(((CallSite) node).call());
+            else if (node.getClass() == FunctionSite.class)
+                this.writeNode(((FunctionSite) node).literal());
+            // a restored function makes the plain call again
+            else if (node.getClass() == InlinedCall.class)
+                this.writeNode(((InlinedCall) node).call().call());
+            else if (node.getClass() == FunctionLiteral.class) {
+                this.writeByte(FUNCTION_LITERAL);
+                this.writeToken(((FunctionLiteral) node).tok());
+                this.writeIdentifiers(((FunctionLiteral) node).parameters());
+                this.writeNode(((FunctionLiteral) node).body());
+                this.writeString(((FunctionLiteral) node).name());
+            }
+            else if (node.getClass() == BlockStatement.class) {
+                this.writeByte(BLOCK);
+                this.writeToken(((BlockStatement) node).tok());
+                this.writeNodes(((BlockStatement) node).statements());
+            }
+            else if (node.getClass() == ExpressionStatement.class) {
+                this.writeByte(EXPRESSION_STATEMENT);
+                this.writeToken(((ExpressionStatement) node).tok());
+                this.writeNode(((ExpressionStatement) node).value());
+            }
+            else if (node.getClass() == LetStatement.class) {
+                this.writeByte(LET);
+                this.writeToken(((LetStatement) node).tok());
+                this.writeNode(((LetStatement) node).name());
+                this.writeNode(((LetStatement) node).value());
+            }
+            else if (node.getClass() == YieldStatement.class) {
+                this.writeByte(YIELD);
+                this.writeToken(((YieldStatement) node).tok());
+                this.writeNode(((YieldStatement) node).value());
+            }
+            else if (node.getClass() == ReturnStatement.class) {
+                this.writeByte(RETURN);
+                this.writeToken(((ReturnStatement) node).tok());
+                this.writeNode(((ReturnStatement) node).value());
+            }
+            else if (node.getClass() == AssignStatement.class) {
+                this.writeByte(ASSIGN);
+                this.writeToken(((AssignStatement) node).tok());
+                this.writeNode(((AssignStatement) node).name());
+                this.writeNode(((AssignStatement) node).value());
+            }
+            else if (node.getClass() == WhileStatement.class) {
+                this.writeByte(WHILE);
+                this.writeToken(((WhileStatement) node).tok());
+                this.writeNode(((WhileStatement) node).condition());
+                this.writeNode(((WhileStatement) node).body());
+            }
+            else if (node.getClass() == ForStatement.class) {
+                this.writeByte(FOR);
+                this.writeToken(((ForStatement) node).tok());
+                this.writeNode(((ForStatement) node).variable());
+                this.writeNode(((ForStatement) node).iterable());
+                this.writeNode(((ForStatement) node).end());
+                this.writeNode(((ForStatement) node).body());
+            }
+            else throw new IllegalStateException("unknown node " + node.getClass().getSimpleName());
+        }
+    }
+
+    private static final class Reader extends Decoder {
+        private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+        private final byte[] buf;
+        private int pos = 0;
+        private final List<Object> refs = new ArrayList<>();
+        private final List<String> strings = new ArrayList<>();
+        private final ArrayDeque<Environment> pendingEnvs = new ArrayDeque<>();
+        private final ArrayDeque<Entity[]> pendingValues = new ArrayDeque<>();
+        // one scope per function body, shared by its literal and the frames of its calls, as after linking
+        private final Map<BlockStatement, FunctionScope> scopes = new IdentityHashMap<>();
+
+        Reader(byte[] pBuf) {
+            this.buf = pBuf;
+        }
+
+        @Override
+        int readByte() throws IOException {
+            if (this.pos == this.buf.length)
+                throw truncated();
+            return this.buf[this.pos++] & 0xFF;
+        }
+
+        @Override
+        int read(byte[] dst, int off, int len) throws IOException {
+            if (this.pos == this.buf.length)
+                throw truncated();
+            int n = Math.min(this.buf.length - this.pos, len);
+            System.arraycopy(this.buf, this.pos, dst, off, n);
+            this.pos += n;
+            return n;
+        }
+
+        @Override
+        long remaining() {
+            return this.buf.length - this.pos;
+        }
+
+        String readString() throws IOException {
+            int tag = this.readVarint();
+            if (tag == 0)
+                return null;
+            if (tag != 1)
+                return ref(this.strings, tag - 2);
+            int length = this.readCount();
+            String s = new String(this.buf, this.pos, length, StandardCharsets.UTF_8);
+            this.pos += length;
+            this.strings.add(s);
+            return s;
+        }
+
+        int reserve() {
+            this.refs.add(null);
+            return this.refs.size() - 1;
+        }
+
+        <T> T register(int id, T obj) {
+            this.refs.set(id, obj);
+            return obj;
+        }
+
+        Entity readEntity() throws IOException {
+            int tag = this.readByte();
+            switch (tag) {
+                case NULL -> { return Interpreter.NULL; }
+                case TRUE -> { return Interpreter.TRUE; }
+                case FALSE -> { return Interpreter.FALSE; }
+                case INT -> { return new IntegerObj(this.readZigzag()); }
+                case STRING -> { return new StringObj(this.readString()); }
+                case BUILTIN -> {
+                    String name = this.readString();
+                    Entity builtin = Interpreter.builtins.get(name);
+                    if (builtin == null)
+                        throw new IOException("snapshot refers to an unknown builtin: " + name);
+                    return builtin;
+                }
+                case REF -> { return (Entity) ref(this.refs, this.readVarint()); }
+                case ARRAY -> {
+                    int size = this.readCount();
+                    List<Entity> elements = new ArrayList<>(presize(size));
+                    ArrayObj array = this.register(this.reserve(), new ArrayObj(elements));
+                    for (int i = 0; i < size; i++)
+                        elements.add(this.readEntity());
+                    return array;
+                }
+                case MAP -> {
+                    int size = this.readCount();
+                    Map<Entity, Entity> pairs = new HashMap<>(presize(size) * 2);
+                    MapObj map = this.register(this.reserve(), new MapObj(pairs));
+                    for (int i = 0; i < size; i++)
+                        pairs.put(this.readEntity(), this.readEntity());
+                    return map;
+                }
+                case FUNCTION -> {
+                    int id = this.reserve();
+                    FunctionSite site = (FunctionSite) this.readNode();
+                    return this.register(id, new FunctionObj(site.literal(), this.readEnv(), site.scope()));
+                }
+                case MEMO -> {
+                    int id = this.reserve();
+                    Entity fn = this.readEntity();
+                    int maxSize = this.readVarint();
+                    if (maxSize <= 0)
+                        throw new IOException("memo cache size " + maxSize);
+                    return this.register(id, new BuiltIn(new MemoFunction(fn, new MemoCache(maxSize))));
+                }
+                default -> throw new IOException("unknown entity tag " + tag);
+            }
+        }
+
+        Environment readEnv() throws IOException {
+            int tag = this.readByte();
+            if (tag == REF)
+                return (Environment) ref(this.refs, this.readVarint());
+            int id = this.reserve();
+            if (tag == GLOBAL_ENV) {
+                Environment env = this.register(id, new Environment());
+                this.pendingEnvs.add(env);
+                return env;
+            }
+            if (tag != FRAME_ENV)
+                throw new IOException("unknown environment tag " + tag);
+            Environment outer = this.readEnv();
+            FunctionScope scope;
+            int scopeTag = this.readByte();
+            if (scopeTag == NO_SCOPE)
+                scope = null;
+            else if (scopeTag == CAPTURED_SCOPE)
+                scope = FunctionScope.CAPTURED;
+            else {
+                List<Identifier> parameters = this.readIdentifiers();
+                scope = this.scope(parameters, (BlockStatement) this.readNode());
+            }
+            String[] names = new String[this.readCount()];
+            for (int i = 0; i < names.length; i++)
+                names[i] = this.readString();
+            // the frame takes over the values array, which is filled once the pending values are read
+            Entity[] values = new Entity[names.length];
+            Environment env = this.register(id, new EnclosedEnvironment(outer, names, values, scope));
+            this.pendingEnvs.add(env);
+            this.pendingValues.add(values);
+            return env;
+        }
+
+        FunctionScope scope(List<Identifier> parameters, BlockStatement body) {
+            return this.scopes.computeIfAbsent(body, b -> new FunctionScope(parameters, b));
+        }
+
+        void readPendingEnvs() throws IOException {
+            while (!this.pendingEnvs.isEmpty()) {
+                Environment env = this.pendingEnvs.poll();
+                if (env.getClass() == EnclosedEnvironment.class) {
+                    Entity[] values = this.pendingValues.poll();
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = this.readEntity();
+                }
+                else {
+                    int size = this.readCount();
+                    for (int i = 0; i < size; i++) {
+                        String name = this.readString();
+                        env.set(name, this.readEntity());
+                    }
+                }
+            }
+        }
+
+        Token readToken() throws IOException {
+            TokenType type = TOKEN_TYPES[this.readVarint()];
+            String literal = this.readString();
+            int line = this.readVarint();
+            return new Token(type, literal, line, this.readVarint());
+        }
+
+        List<Identifier> readIdentifiers() throws IOException {
+            int size = this.readCount();
+            List<Identifier> identifiers = new ArrayList<>(presize(size));
+            for (int i = 0; i < size; i++)
+                identifiers.add((Identifier) this.readNode());
+            return identifiers;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T extends Node> List<T> readNodes() throws IOException {
+            int size = this.readCount();
+            List<T> nodes = new ArrayList<>(presize(size));
+            for (int i = 0; i < size; i++)
+                nodes.add((T) this.readNode());
+            return nodes;
+        }
+
+        Node readNode() throws IOException {
+            int tag = this.readByte();
+            switch (tag) {
+                case NULL -> { return null; }
+                case REF -> { return (Node) ref(this.refs, this.readVarint()); }
+                case IDENTIFIER -> { return new Identifier(this.readToken(), this.readString()); }
+                case INTEGER_LITERAL -> { return new IntegerLiteral(this.readToken(), this.readZigzag()); }
+                case BOOLEAN_LITERAL -> { return new BooleanLiteral(this.readToken(), this.readByte() != 0); }
+                case STRING_LITERAL -> { return new StringLiteral(this.readToken(), this.readString()); }
+                case ARRAY_LITERAL -> { return new ArrayLiteral(this.readToken(), this.readNodes()); }
+                case MAP_LITERAL -> {
+                    Token tok = this.readToken();
+                    int size = this.readCount();
+                    Map<Expression, Expression> pairs = new HashMap<>(presize(size) * 2);
+                    for (int i = 0; i < size; i++)
+                        pairs.put((Expression) this.readNode(), (Expression) this.readNode());
+                    return new MapLiteral(tok, pairs);
+                }
+                case INDEX -> {
+                    Token tok = this.readToken();
+                    Expression left = (Expression) this.readNode();
+                    return new IndexExpression(tok, left, (Expression) this.readNode());
+                }
+                case PREFIX -> {
+                    Token tok = this.readToken();
+                    String op = this.readString();
+                    return new PrefixExpression(tok, op, (Expression) this.readNode());
+                }
+                case INFIX -> {
+                    Token tok = this.readToken();
+                    Expression left = (Expression) this.readNode();
+                    String op = this.readString();
+                    return new InfixExpression(tok, left, op, (Expression) this.readNode());
+                }
+                case IF -> {
+                    Token tok = this.readToken();
+                    Expression condition = (Expression) this.readNode();
+                    BlockStatement consequence = (BlockStatement) this.readNode();
+                    return new IfExpression(tok, condition, consequence, (BlockStatement) this.readNode());
+                }
+                case CALL -> {
+                    Token tok = this.readToken();
+                    Expression function = (Expression) this.readNode();
+                    return new CallSite(new CallExpression(tok, function, this.readNodes()));
+                }
+                case FUNCTION_LITERAL -> {
+                    int id = this.reserve();
+                    Token tok = this.readToken();
+                    List<Identifier> parameters = this.readIdentifiers();
+                    BlockStatement body = (BlockStatement) this.readNode();
+                    String name = this.readString();
+                    FunctionLiteral literal = new FunctionLiteral(tok, parameters, body, name);
+                    return this.register(id, new FunctionSite(literal, this.scope(parameters, body)));
+                }
+                case BLOCK -> {
+                    int id = this.reserve();
+                    Token tok = this.readToken();
+                    return this.register(id, new BlockStatement(tok, this.readNodes()));
+                }
+                case EXPRESSION_STATEMENT -> {
+                    Token tok = this.readToken();
+                    return new ExpressionStatement(tok, (Expression) this.readNode());
+                }
+                case LET -> {
+                    Token tok = this.readToken();
+                    Identifier name = (Identifier) this.readNode();
+                    return new LetStatement(tok, name, (Expression) this.readNode());
+                }
+                case RETURN -> {
+                    Token tok = this.readToken();
+                    return new ReturnStatement(tok, (Expression) this.readNode());
+                }
+                case YIELD -> {
+                    Token tok = this.readToken();
+                    return new YieldStatement(tok, (Expression) this.readNode());
+                }
+                case ASSIGN -> {
+                    Token tok = this.readToken();
+                    Identifier name = (Identifier) this.readNode();
+                    return new AssignStatement(tok, name, (Expression) this.readNode());
+                }
+                case WHILE -> {
+                    Token tok = this.readToken();
+                    Expression condition = (Expression) this.readNode();
+                    return new WhileStatement(tok, condition, (BlockStatement) this.readNode());
+                }
+                case FOR -> {
+                    Token tok = this.readToken();
+                    Identifier variable = (Identifier) this.readNode();
+                    Expression iterable = (Expression) this.readNode();
+                    Expression end = (Expression) this.readNode();
+                    return new ForStatement(tok, variable, iterable, end, (BlockStatement) this.readNode());
+                }
+                default -> throw new IOException("unknown node tag " + tag);
+            }
+        }
+    }
+}
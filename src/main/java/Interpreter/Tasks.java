@@ -0,0 +1,100 @@
+package Interpreter;
+
+import Interpreter.ObjSystem.Entity;
+import Interpreter.ObjSystem.ErrorMsg;
+import Interpreter.ObjSystem.FutureObj;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Guest tasks started with spawn(). The tree targets Java 17, so tasks run on a cached
+ * pool of daemon platform threads instead of virtual threads; a task blocked in recv()
+ * or await() holds its thread, which is why the pool is not bounded. Tasks are
+ * structured: every task belongs to the scope of the thread that spawned it, and when
+ * that task returns, or the top-level script calls cancelAll(), the children still
+ * running are cancelled. A cancelled task is interrupted, fails at its next checkpoint
+ * or blocking operation and unwinds through the normal error path.
+ */
+public final class Tasks {
+
+    // stack size of task and generator threads in bytes; smaller than the one of the script, as there may be hundreds
+    public static long stackSize = 16L << 20;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(null, runnable, "karaoke-task-" + threadCount.incrementAndGet(), stackSize);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ThreadLocal<Set<Task>> children = ThreadLocal.withInitial(ConcurrentHashMap::newKeySet);
+
+    private Tasks() {}
+
+    static FutureObj spawn(Entity fn, Entity[] args) {
+        Budget parent = Budget.current();
+        Budget.cancellable();
+        Task task = new Task(fn, args, parent != null ? parent.fork() : null, children.get());
+        task.siblings.add(task);
+        executor.execute(task);
+        return new FutureObj(task);
+    }
+
+    /* Cancels every unfinished task spawned by the calling thread. */
+    public static void cancelAll() {
+        for (Task task: children.get())
+            task.cancel(true);
+    }
+
+    static Entity await(FutureObj future) {
+        try {
+            return future.future().get();
+        } catch (CancellationException e) {
+            return new ErrorMsg("awaited task was cancelled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ErrorMsg("task cancelled");
+        } catch (ExecutionException e) {
+            return new ErrorMsg("task failed - %s", e.getCause());
+        }
+    }
+
+    private static final class Task extends FutureTask<Entity> {
+        private final Budget budget;
+        private final Set<Task> siblings;
+
+        Task(Entity fn, Entity[] args, Budget pBudget, Set<Task> pSiblings) {
+            super(() -> run(fn, args, pBudget));
+            this.budget = pBudget;
+            this.siblings = pSiblings;
+        }
+
+        private static Entity run(Entity fn, Entity[] args, Budget budget) {
+            Budget previous = Budget.bind(budget);
+            try {
+                return Interpreter.applyFunction(fn, args);
+            } catch (StackOverflowError e) {
+                return new ErrorMsg("stack overflow - guest call depth exceeds the Java stack");
+            } finally {
+                // the pool thread is reused, its children must not outlive this task
+                cancelAll();
+                children.remove();
+                Budget.bind(previous);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (this.budget != null)
+                this.budget.cancel();
+            return cancelled;
+        }
+
+        @Override
+        protected void done() {
+            this.siblings.remove(this);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 import Interpreter.ObjSystem.Entity;
+import Interpreter.ObjSystem.EntityType;
 import Interpreter.ObjSystem.Environment;
+import Interpreter.ObjSystem.Inspection;
 import Interpreter.*;
 import Lexer.*;
 import Parser.AST.Program;
@@ -9,24 +11,138 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import static Interpreter.Interpreter.NULL;
 
 public class Karaoke {
+    private static final String USAGE = "Usage: karaoke [--profile[=file]] [--max-steps=n] [--timeout=ms] " +
+            "[--max-depth=n] [--max-allocs=n] [--max-print=n] [--stack=size] [--task-stack=size] " +
+            "[--restore=file] [--snapshot=file] [script]\n" +
+            "       karaoke bench [--warmup=n] [--repeat=n] [--out=file] [--baseline=file] [--tolerance=percent] [path...]";
+    // guest calls recurse on the Java stack, so its size bounds the depth of guest recursion
+    private static final long DEFAULT_STACK = 512L << 20;
+    private static Budget budget = null;
+    private static long maxPrint = 0;
+
     public static void main(String[] args) throws IOException {
         Interpreter.init();
-        if (args.length > 1) {
-            System.out.println("Usage: karaoke [script]");
+        if (args.length > 0 && args[0].equals("bench")) {
+            Integer status = onLargeStack(DEFAULT_STACK, () -> Bench.run(Arrays.copyOfRange(args, 1, args.length)));
+            System.exit(status != null ? status : 130);
+        }
+        String script = null;
+        Path profileOut = null;
+        Path restoreFrom = null;
+        Path snapshotTo = null;
+        long maxSteps = 0, timeout = 0, maxAllocs = 0, stackSize = DEFAULT_STACK;
+        int maxDepth = 0;
+        try {
+            for (String arg: args) {
+                if (arg.equals("--profile"))
+                    profileOut = Paths.get("karaoke-profile.folded");
+                else if (arg.startsWith("--profile="))
+                    profileOut = Paths.get(arg.substring("--profile=".length()));
+                else if (arg.startsWith("--max-steps="))
+                    maxSteps = Long.parseLong(arg.substring("--max-steps=".length()));
+                else if (arg.startsWith("--timeout="))
+                    timeout = Long.parseLong(arg.substring("--timeout=".length()));
+                else if (arg.startsWith("--max-depth="))
+                    maxDepth = Integer.parseInt(arg.substring("--max-depth=".length()));
+                else if (arg.startsWith("--max-allocs="))
+                    maxAllocs = Long.parseLong(arg.substring("--max-allocs=".length()));
+                else if (arg.startsWith("--max-print="))
+                    maxPrint = Long.parseLong(arg.substring("--max-print=".length()));
+                else if (arg.startsWith("--stack="))
+                    stackSize = parseSize(arg.substring("--stack=".length()));
+                else if (arg.startsWith("--task-stack="))
+                    Tasks.stackSize = parseSize(arg.substring("--task-stack=".length()));
+                else if (arg.startsWith("--restore="))
+                    restoreFrom = Paths.get(arg.substring("--restore=".length()));
+                else if (arg.startsWith("--snapshot="))
+                    snapshotTo = Paths.get(arg.substring("--snapshot=".length()));
+                else if (arg.startsWith("--") || script != null) {
+                    System.out.println(USAGE);
+                    System.exit(64);
+                }
+                else script = arg;
+            }
+        } catch (NumberFormatException e) {
+            System.out.println(USAGE);
             System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
-        } else {
-            runPrompt();
         }
+        Profiler.enabled = profileOut != null;
+        if (maxSteps > 0 || timeout > 0 || maxDepth > 0 || maxAllocs > 0)
+            budget = new Budget(maxSteps, timeout, maxDepth, maxAllocs);
+        Environment env = new Environment();
+        if (restoreFrom != null) {
+            try {
+                env = Snapshot.load(restoreFrom);
+            } catch (IOException e) {
+                System.out.println("could not restore snapshot: " + e.getMessage());
+                System.exit(66);
+            }
+        }
+        String source = script;
+        Environment global = env;
+        Boolean done = onLargeStack(stackSize, () -> {
+            if (source != null) {
+                runFile(source, global);
+            } else {
+                runPrompt(global);
+            }
+            Tasks.cancelAll();
+            return true;
+        });
+        if (done == null)
+            return;
+        Output.flush();
+        if (snapshotTo != null) {
+            try {
+                Snapshot.save(env, snapshotTo);
+            } catch (IOException e) {
+                System.out.println("could not write snapshot: " + e.getMessage());
+                System.exit(74);
+            }
+        }
+        if (profileOut != null)
+            Profiler.report(System.out, profileOut);
     }
 
-    private static void runFile(String path) throws IOException {
-        Environment env = new Environment();
+    // runs the work on a thread of its own, since the stack size of main can't be chosen; null if interrupted
+    private static <T> T onLargeStack(long stackSize, Callable<T> work) throws IOException {
+        FutureTask<T> task = new FutureTask<>(work);
+        Thread thread = new Thread(null, task, "karaoke-main", stackSize);
+        thread.start();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io)
+                throw io;
+            if (e.getCause() instanceof RuntimeException re)
+                throw re;
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // bytes, with an optional k, m or g suffix
+    private static long parseSize(String size) {
+        long unit = switch (size.isEmpty() ? ' ' : Character.toLowerCase(size.charAt(size.length() - 1))) {
+            case 'k' -> 1L << 10;
+            case 'm' -> 1L << 20;
+            case 'g' -> 1L << 30;
+            default -> 1;
+        };
+        return Long.parseLong(unit == 1 ? size : size.substring(0, size.length() - 1)) * unit;
+    }
+
+    private static void runFile(String path, Environment env) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
         run(new String(bytes, Charset.defaultCharset()), env);
         runPrompt(env);
@@ -38,7 +154,7 @@ public class Karaoke {
         for (;;) {
             System.out.print(">> ");
             String line = reader.readLine();
-            if (Objects.equals(line, ""))
+            if (line == null || line.isEmpty())
                 break;
             run(line, env);
             /* Lexer Debug Code */
@@ -47,36 +163,55 @@ public class Karaoke {
         }
     }
 
-    private static void runPrompt() throws IOException {
-        InputStreamReader input = new InputStreamReader(System.in);
-        BufferedReader reader = new BufferedReader(input);
-        Environment env = new Environment();
-        for (;;) {
-            System.out.print(">> ");
-            String line = reader.readLine();
-            if (Objects.equals(line, "")) break;
-            run(line, env);
-            /* Lexer Debug Code */
-//            Lexer scan = new Lexer(line);
-//            System.out.println(scan.tokenize());
-        }
-    }
-
-    private static void run(String source, Environment env) {
-        Lexer scanner = new Lexer(source);
-        Parser par = new Parser(scanner);
-        Program prg = par.parseProgram();
+    private static void run(String source, Environment env) throws IOException {
+        List<String> errors = new ArrayList<>(0);
+        Program prg = parse(source, errors);
         Entity eval;
-        if (!par.getErrors().isEmpty())
-            par.getErrors().forEach(System.out::println);
+        if (!errors.isEmpty())
+            errors.forEach(System.out::println);
         else {
             /*Parser Debug Code*/
 //            System.out.println(prg);
-            eval = Interpreter.eval(prg, env);
-            if (eval != NULL)
-                System.out.println(eval.Inspect());
+            eval = evaluate(prg, env);
+            // tasks of a failed script are not awaited by anyone anymore
+            if (eval != null && eval.Type() == EntityType.ERROR_OBJ)
+                Tasks.cancelAll();
+            if (eval != null && eval != NULL) {
+                // tasks that are still running may print at the same time
+                synchronized (Output.writer()) {
+                    Inspection.write(eval, Output.writer(), maxPrint);
+                    Output.writer().append('\n');
+                }
+            }
+            Output.flush();
         }
     }
+
+    /* Lexes and parses the source, recorded as a karaoke.Parse event while those are enabled. */
+    static Program parse(String source, List<String> errors) {
+        Events.Parse event = Events.parseEnabled ? new Events.Parse() : null;
+        if (event != null)
+            event.begin();
+        Parser parser = new Parser(new Lexer(source));
+        Program program = parser.parseProgram();
+        errors.addAll(parser.getErrors());
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.sourceLength = source.length();
+                event.statements = program.getStatements().size();
+                event.errors = errors.size();
+                event.commit();
+            }
+        }
+        return program;
+    }
+
+    /* Evaluates a parsed program the way every script and REPL line is run, also used by the bench runner. */
+    static Entity evaluate(Program prg, Environment env) {
+        prg = Linker.link(prg);
+        return budget != null ? Interpreter.eval(prg, env, budget) : Interpreter.evalGuarded(prg, env);
+    }
 }
 
 
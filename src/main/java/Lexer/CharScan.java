@@ -0,0 +1,67 @@
+package Lexer;
+
+/*
+ * Scans runs of one character class in the source of the lexer. Each method returns
+ * the index of the first character at or after from that ends the run, or to if the
+ * run reaches it. This class scans one char at a time. With -Dkaraoke.lexer.simd=true
+ * and the JVM started with --add-modules jdk.incubator.vector, INSTANCE is the
+ * subclass using the Vector API instead; it is opt-in because vector code is very
+ * slow until C2 has compiled it, which costs a single lexing pass more than it saves.
+ */
+class CharScan {
+
+    static final CharScan INSTANCE = load();
+
+    private static CharScan load() {
+        if (!"true".equals(System.getProperty("karaoke.lexer.simd")))
+            return new CharScan();
+        try {
+            return (CharScan) Class.forName("Lexer.VectorCharScan").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // the incubator module is not resolved
+            return new CharScan();
+        }
+    }
+
+    /* Blanks other than '\n', which the lexer counts lines at. */
+    int blanks(char[] src, int from, int to) {
+        while (from < to && isBlank(src[from]))
+            from++;
+        return from;
+    }
+
+    int alphaNumerics(char[] src, int from, int to) {
+        while (from < to && isAlphaNumeric(src[from]))
+            from++;
+        return from;
+    }
+
+    int digits(char[] src, int from, int to) {
+        while (from < to && isDigit(src[from]))
+            from++;
+        return from;
+    }
+
+    /* Characters of a string literal, up to a '"', a '\n' or a '\0'. */
+    int stringChars(char[] src, int from, int to) {
+        while (from < to && !endsStringRun(src[from]))
+            from++;
+        return from;
+    }
+
+    static boolean isBlank(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\r';
+    }
+
+    static boolean isDigit(char ch) {
+        return '0' <= ch && ch <= '9';
+    }
+
+    static boolean isAlphaNumeric(char ch) {
+        return ('a' <= ch && ch <= 'z') || ('A' <= ch && ch <= 'Z') || ch == '_' || isDigit(ch);
+    }
+
+    static boolean endsStringRun(char ch) {
+        return ch == '"' || ch == '\n' || ch == 0;
+    }
+}
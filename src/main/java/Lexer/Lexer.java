@@ -6,26 +6,55 @@ import Lexer.Token.TokenType;
 import java.util.*;
 
 public class Lexer {
-    private final Map<String, TokenType> keywords = new HashMap<>(Map.of("var", TokenType.VAR, "fn", TokenType.FUNC, "true", TokenType.TRUE,
-            "false", TokenType.FALSE, "return", TokenType.RETURN, "if", TokenType.IF, "else", TokenType.ELSE));
+    private final Map<String, TokenType> keywords = new HashMap<>(Map.ofEntries(Map.entry("var", TokenType.VAR),
+            Map.entry("fn", TokenType.FUNC), Map.entry("true", TokenType.TRUE), Map.entry("false", TokenType.FALSE),
+            Map.entry("return", TokenType.RETURN), Map.entry("if", TokenType.IF), Map.entry("else", TokenType.ELSE),
+            Map.entry("while", TokenType.WHILE), Map.entry("for", TokenType.FOR), Map.entry("in", TokenType.IN),
+            Map.entry("yield", TokenType.YIELD)));
     public String source;
+    private final char[] chars;
     public char curChar;
     public int readPos = 0;
     public int curPos = 0;
+    public int line = 1;
+    public int lineStart = 0;
+    private int tokLine;
+    private int tokColumn;
     public  List<Token> tokens = new ArrayList<>(0);
 
     public Lexer (String source) {
         this.source = source;
+        this.chars = source.toCharArray();
         this.readChar();
     }
 
+    // runs are skipped by CharScan, line breaks are counted here
     private void skipWhitespaces() {
-        while (this.curChar == '\n' || this.curChar == '\t' || this.curChar == '\r' || this.curChar == ' ') {
-            this.readChar();
+        int pos = this.curPos;
+        for (;;) {
+            pos = CharScan.INSTANCE.blanks(this.chars, pos, this.chars.length);
+            if (pos >= this.chars.length || this.chars[pos] != '\n')
+                break;
+            this.line++;
+            this.lineStart = ++pos;
         }
+        this.seek(pos);
+    }
+
+    // moves to the char at pos as readChar() would, pos must not be behind a '\n' not counted yet
+    private void seek(int pos) {
+        if (pos == this.curPos)
+            return;
+        this.curChar = pos < this.chars.length ? this.chars[pos] : 0;
+        this.curPos = pos;
+        this.readPos = pos + 1;
     }
 
     private void readChar() {
+        if (this.curChar == '\n') {
+            this.line++;
+            this.lineStart = this.readPos;
+        }
         if (this.readPos >= this.source.length())
             this.curChar = 0;
         else
@@ -40,22 +69,34 @@ public class Lexer {
         else return this.source.charAt(this.readPos);
     }
 
+    // the current char is alpha already
     private String readIdent() {
         int pos = this.curPos;
-        while (this.isAlpha(this.curChar) || (this.isAlphaNumeric(this.curChar) && this.curPos > pos)) {
-            this.readChar();
-        }
+        this.seek(CharScan.INSTANCE.alphaNumerics(this.chars, pos + 1, this.chars.length));
         return this.source.substring(pos, this.curPos);
     }
 
     private String readInt() {
         int pos = this.curPos;
-        while (this.isDigit(this.curChar)) {
-            this.readChar();
-        }
+        this.seek(CharScan.INSTANCE.digits(this.chars, pos, this.chars.length));
         return this.source.substring(pos, this.curPos);
     }
 
+    // the current char is the opening quote; stops on the closing one, or at the end of the source
+    private String readString() {
+        int start = this.curPos + 1;
+        int pos = start;
+        for (;;) {
+            pos = CharScan.INSTANCE.stringChars(this.chars, pos, this.chars.length);
+            if (pos >= this.chars.length || this.chars[pos] != '\n')
+                break;
+            this.line++;
+            this.lineStart = ++pos;
+        }
+        this.seek(pos);
+        return this.source.substring(start, pos);
+    }
+
     private TokenType lookupIdent (String tag) {
         return keywords.getOrDefault(tag, TokenType.IDENT);
     }
@@ -68,81 +109,86 @@ public class Lexer {
         return ('a' <= ch && ch <= 'z') || ('A' <= ch && ch <= 'Z') || ch == '_';
     }
 
-    private boolean isAlphaNumeric(char ch) { return isAlpha(ch) || isDigit(ch); }
+
+    private Token newToken(TokenType pType, String pLiteral) {
+        return new Token(pType, pLiteral, this.tokLine, this.tokColumn);
+    }
 
     public Token nextToken () {
         Token tok;
         this.skipWhitespaces();
+        this.tokLine = this.line;
+        this.tokColumn = this.curPos - this.lineStart + 1;
         switch (this.curChar) {
             case '=' -> {
                 if (this.peekChar() == '=') {
                     this.readChar();
-                    tok = new Token(TokenType.EQ,"==");
+                    tok = this.newToken(TokenType.EQ,"==");
                 }
-                else tok = new Token(TokenType.ASSIGN, String.valueOf(this.curChar));
+                else tok = this.newToken(TokenType.ASSIGN, String.valueOf(this.curChar));
             }
             case '!' -> {
                 if (this.peekChar() == '=') {
                     this.readChar();
-                    tok = new Token(TokenType.BANG_EQ, "!=");
+                    tok = this.newToken(TokenType.BANG_EQ, "!=");
                 }
-                else tok = new Token(TokenType.BANG, String.valueOf(this.curChar));
+                else tok = this.newToken(TokenType.BANG, String.valueOf(this.curChar));
             }
             case '<' -> {
                 if (this.peekChar() == '=') {
                     this.readChar();
-                    tok = new Token(TokenType.LESS_EQ, "<=");
+                    tok = this.newToken(TokenType.LESS_EQ, "<=");
                 }
-                else tok = new Token(TokenType.LESS, String.valueOf(this.curChar));
+                else tok = this.newToken(TokenType.LESS, String.valueOf(this.curChar));
             }
             case '>' -> {
                 if (this.peekChar() == '=') {
                     this.readChar();
-                    tok = new Token(TokenType.GREATER_EQ, ">=");
+                    tok = this.newToken(TokenType.GREATER_EQ, ">=");
                 }
-                else tok = new Token(TokenType.GREATER, String.valueOf(this.curChar));
+                else tok = this.newToken(TokenType.GREATER, String.valueOf(this.curChar));
             }
-            case '"' -> {
-                StringBuilder result = new StringBuilder();
-                while (this.peekChar() != '"' && this.peekChar() != 0) {
+            case '"' -> tok = this.newToken(TokenType.STRING, this.readString());
+            case '.' -> {
+                if (this.peekChar() == '.') {
                     this.readChar();
-                    result.append(this.curChar);
+                    tok = this.newToken(TokenType.DOTDOT, "..");
                 }
-                this.readChar();
-                tok = new Token(TokenType.STRING, result.toString());
+                else tok = this.newToken(TokenType.ILLEGAL, String.valueOf(this.curChar));
             }
-            case ';' -> tok = new Token(TokenType.SEMICOL, String.valueOf(this.curChar));
-            case ':' -> tok = new Token(TokenType.COLON, String.valueOf(this.curChar));
-            case ',' -> tok = new Token(TokenType.COMMA, String.valueOf(this.curChar));
-            case '(' -> tok = new Token(TokenType.LPAREN, String.valueOf(this.curChar));
-            case ')' -> tok = new Token(TokenType.RPAREN, String.valueOf(this.curChar));
-            case '{' -> tok = new Token(TokenType.LBRACE, String.valueOf(this.curChar));
-            case '}' -> tok = new Token(TokenType.RBRACE, String.valueOf(this.curChar));
-            case '[' -> tok = new Token(TokenType.LBRACKET, String.valueOf(this.curChar));
-            case ']' -> tok = new Token(TokenType.RBRACKET, String.valueOf(this.curChar));
-            case '+' -> tok = new Token(TokenType.PLUS, String.valueOf(this.curChar));
-            case '-' -> tok = new Token(TokenType.MINUS, String.valueOf(this.curChar));
-            case '*' -> tok = new Token(TokenType.ASTERISK, String.valueOf(this.curChar));
-            case '/' -> tok = new Token(TokenType.SLASH, String.valueOf(this.curChar));
-            case '~' -> tok = new Token(TokenType.TILDE, String.valueOf(this.curChar));
-
-            case 0 -> tok = new Token(TokenType.EOF, "null");
+            case ';' -> tok = this.newToken(TokenType.SEMICOL, String.valueOf(this.curChar));
+            case ':' -> tok = this.newToken(TokenType.COLON, String.valueOf(this.curChar));
+            case ',' -> tok = this.newToken(TokenType.COMMA, String.valueOf(this.curChar));
+            case '(' -> tok = this.newToken(TokenType.LPAREN, String.valueOf(this.curChar));
+            case ')' -> tok = this.newToken(TokenType.RPAREN, String.valueOf(this.curChar));
+            case '{' -> tok = this.newToken(TokenType.LBRACE, String.valueOf(this.curChar));
+            case '}' -> tok = this.newToken(TokenType.RBRACE, String.valueOf(this.curChar));
+            case '[' -> tok = this.newToken(TokenType.LBRACKET, String.valueOf(this.curChar));
+            case ']' -> tok = this.newToken(TokenType.RBRACKET, String.valueOf(this.curChar));
+            case '+' -> tok = this.newToken(TokenType.PLUS, String.valueOf(this.curChar));
+            case '-' -> tok = this.newToken(TokenType.MINUS, String.valueOf(this.curChar));
+            case '*' -> tok = this.newToken(TokenType.ASTERISK, String.valueOf(this.curChar));
+            case '/' -> tok = this.newToken(TokenType.SLASH, String.valueOf(this.curChar));
+            case '~' -> tok = this.newToken(TokenType.TILDE, String.valueOf(this.curChar));
+
+            case 0 -> tok = this.newToken(TokenType.EOF, "null");
             default -> {
                 String ident;
                 String num;
                 if (isAlpha(this.curChar)) {
                     ident = this.readIdent();
                     TokenType lookup = this.lookupIdent(ident);
+                    // interned, so frames mostly find names by identity
                     if (lookup == TokenType.IDENT)
-                        return new Token(lookup, ident);
+                        return this.newToken(lookup, ident.intern());
                     else
-                        return new Token(lookup, lookup.toString().toLowerCase());
+                        return this.newToken(lookup, lookup.toString().toLowerCase());
                 }
                 else if (isDigit(this.curChar)) {
                     num = this.readInt();
-                    return new Token(TokenType.INT, num);
+                    return this.newToken(TokenType.INT, num);
                 }
-                else tok = new Token(TokenType.ILLEGAL, String.valueOf(this.curChar));
+                else tok = this.newToken(TokenType.ILLEGAL, String.valueOf(this.curChar));
             }
         }
         this.readChar();
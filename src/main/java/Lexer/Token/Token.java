@@ -1,11 +1,19 @@
 package Lexer.Token;
 
-public record Token(TokenType type, String literal) {
+public record Token(TokenType type, String literal, int line, int column) {
 
     public Token(TokenType pType) {
         this(pType, "");
     }
 
+    public Token(TokenType pType, String pLiteral) {
+        this(pType, pLiteral, 0, 0);
+    }
+
+    public String position() {
+        return this.line + ":" + this.column;
+    }
+
    @Override
     public String toString() {
         return "Token:{" + this.type + ", \"" + this.literal + "\"}";
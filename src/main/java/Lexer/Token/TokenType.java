@@ -9,9 +9,9 @@ public enum TokenType {
     PLUS, MINUS, ASTERISK, SLASH, LESS_EQ, GREATER_EQ,
     // Delimiters
     LPAREN, RPAREN, LBRACE, LBRACKET,
-    RBRACKET, RBRACE, COMMA, SEMICOL,
+    RBRACKET, RBRACE, COMMA, SEMICOL, DOTDOT,
     //Keywords
-    VAR, FUNC, IF, ELSE, RETURN, TRUE, FALSE,
+    VAR, FUNC, IF, ELSE, RETURN, TRUE, FALSE, WHILE, FOR, IN, YIELD,
     // Special
     ILLEGAL, COLON, EOF
 }
\ No newline at end of file
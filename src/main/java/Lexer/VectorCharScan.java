@@ -0,0 +1,72 @@
+package Lexer;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * CharScan classifying a whole vector of chars per step. Chars are loaded as shorts,
+ * so the ones above 0x7FFF turn negative and fall outside every class. Runs shorter
+ * than a vector, and the rest of the source after the last full vector, are scanned
+ * one char at a time by CharScan.
+ */
+final class VectorCharScan extends CharScan {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    int blanks(char[] src, int from, int to) {
+        // most runs are a single space, not worth a vector load
+        if (from < to && !isBlank(src[from]))
+            return from;
+        for (; from + LANES <= to; from += LANES) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, src, from);
+            VectorMask<Short> blank = v.eq((short) ' ').or(v.eq((short) '\t')).or(v.eq((short) '\r'));
+            int end = blank.not().firstTrue();
+            if (end < LANES)
+                return from + end;
+        }
+        return super.blanks(src, from, to);
+    }
+
+    @Override
+    int alphaNumerics(char[] src, int from, int to) {
+        for (; from + LANES <= to; from += LANES) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, src, from);
+            VectorMask<Short> alnum = range(v, 'a', 'z').or(range(v, 'A', 'Z')).or(range(v, '0', '9'))
+                    .or(v.eq((short) '_'));
+            int end = alnum.not().firstTrue();
+            if (end < LANES)
+                return from + end;
+        }
+        return super.alphaNumerics(src, from, to);
+    }
+
+    @Override
+    int digits(char[] src, int from, int to) {
+        for (; from + LANES <= to; from += LANES) {
+            int end = range(ShortVector.fromCharArray(SPECIES, src, from), '0', '9').not().firstTrue();
+            if (end < LANES)
+                return from + end;
+        }
+        return super.digits(src, from, to);
+    }
+
+    @Override
+    int stringChars(char[] src, int from, int to) {
+        for (; from + LANES <= to; from += LANES) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, src, from);
+            int end = v.eq((short) '"').or(v.eq((short) '\n')).or(v.eq((short) 0)).firstTrue();
+            if (end < LANES)
+                return from + end;
+        }
+        return super.stringChars(src, from, to);
+    }
+
+    private static VectorMask<Short> range(ShortVector v, char low, char high) {
+        return v.compare(VectorOperators.GE, (short) low)
+                .and(v.compare(VectorOperators.LE, (short) high));
+    }
+}
@@ -6,10 +6,22 @@ import Parser.AST.Statements.BlockStatement;
 
 import java.util.List;
 
-public record FunctionLiteral(Token tok, List<Identifier> parameters, BlockStatement body) implements Expression {
+public record FunctionLiteral(Token tok, List<Identifier> parameters, BlockStatement body, String name) implements Expression {
 
     public static Integer nestLevel = 0;
 
+    public FunctionLiteral(Token tok, List<Identifier> parameters, BlockStatement body) {
+        this(tok, parameters, body, null);
+    }
+
+    public FunctionLiteral withName(String pName) {
+        return new FunctionLiteral(this.tok, this.parameters, this.body, pName);
+    }
+
+    public String displayName() {
+        return (this.name != null ? this.name : "<anonymous>") + "@" + this.tok.position();
+    }
+
     @Override
     public void expressionNode() { }
 
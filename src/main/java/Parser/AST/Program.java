@@ -5,7 +5,15 @@ import java.util.List;
 
 public class Program implements Node {
 
-    private final List<Statement> statements = new ArrayList<>(0);
+    private final List<Statement> statements;
+
+    public Program() {
+        this.statements = new ArrayList<>(0);
+    }
+
+    public Program(List<Statement> pStatements) {
+        this.statements = pStatements;
+    }
 
     public List<Statement> getStatements() {
         return statements;
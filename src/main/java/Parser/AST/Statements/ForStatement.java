@@ -0,0 +1,31 @@
+package Parser.AST.Statements;
+
+import Lexer.Token.Token;
+import Parser.AST.Expression;
+import Parser.AST.Expressions.Identifier;
+import Parser.AST.Expressions.IfExpression;
+import Parser.AST.Statement;
+
+/*
+ * for (variable in iterable) { body } walks an array or an iterator; with an end,
+ * for (variable in iterable..end) counts from iterable up to, but not including, end.
+ */
+public record ForStatement(Token tok, Identifier variable, Expression iterable, Expression end, BlockStatement body) implements Statement {
+
+    @Override
+    public String tokenLiteral() {
+        return this.tok.literal();
+    }
+
+    @Override
+    public void statementNode() {}
+
+    @Override
+    public String toString() {
+        IfExpression.nestLevel++;
+        String range = this.end != null ? this.iterable + ".." + this.end : String.valueOf(this.iterable);
+        String out = "for " + this.variable + " in " + range + " {\n" + this.body;
+        IfExpression.nestLevel--;
+        return out;
+    }
+}
@@ -0,0 +1,25 @@
+package Parser.AST.Statements;
+
+import Lexer.Token.Token;
+import Parser.AST.Expression;
+import Parser.AST.Expressions.IfExpression;
+import Parser.AST.Statement;
+
+public record WhileStatement(Token tok, Expression condition, BlockStatement body) implements Statement {
+
+    @Override
+    public String tokenLiteral() {
+        return this.tok.literal();
+    }
+
+    @Override
+    public void statementNode() {}
+
+    @Override
+    public String toString() {
+        IfExpression.nestLevel++;
+        String out = "while " + this.condition + " {\n" + this.body;
+        IfExpression.nestLevel--;
+        return out;
+    }
+}
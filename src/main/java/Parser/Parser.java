@@ -272,6 +272,14 @@ public class Parser {
         switch (this.curToken.type()){
             case VAR -> { return this.parseLetStatement(); }
             case RETURN -> { return this.parseReturnStatement(); }
+            case YIELD -> { return this.parseYieldStatement(); }
+            case WHILE -> { return this.parseWhileStatement(); }
+            case FOR -> { return this.parseForStatement(); }
+            case IDENT -> {
+                if (this.peekTokenIs(TokenType.ASSIGN))
+                    return this.parseAssignStatement();
+                return this.parseExpressionStatement();
+            }
             default -> { return this.parseExpressionStatement(); }
         }
     }
@@ -303,6 +311,8 @@ public class Parser {
         this.nextToken();
 
         Expression value = this.parseExpression(Precedence.LOWEST);
+        if (value instanceof FunctionLiteral fnLiteral && fnLiteral.name() == null)
+            value = fnLiteral.withName(name.value());
 
         if(this.peekTokenIs(TokenType.SEMICOL))
             this.nextToken();
@@ -310,6 +320,67 @@ public class Parser {
         return new LetStatement(letTok, name, value);
     }
 
+    private Statement parseAssignStatement() {
+        Identifier name = new Identifier(this.curToken, this.curToken.literal());
+        this.nextToken();
+        Token assignTok = this.curToken;
+        this.nextToken();
+
+        Expression value = this.parseExpression(Precedence.LOWEST);
+
+        if(this.peekTokenIs(TokenType.SEMICOL))
+            this.nextToken();
+
+        return new AssignStatement(assignTok, name, value);
+    }
+
+    private Statement parseWhileStatement() {
+        Token whileTok = this.curToken;
+        if (this.expectedPeekNot(TokenType.LPAREN))
+            return null;
+        this.nextToken();
+        Expression condition = this.parseExpression(Precedence.LOWEST);
+        if (this.expectedPeekNot(TokenType.RPAREN))
+            return null;
+        if (this.expectedPeekNot(TokenType.LBRACE))
+            return null;
+        BlockStatement body = this.parseBlockStatement();
+
+        if(this.peekTokenIs(TokenType.SEMICOL))
+            this.nextToken();
+
+        return new WhileStatement(whileTok, condition, body);
+    }
+
+    private Statement parseForStatement() {
+        Token forTok = this.curToken;
+        if (this.expectedPeekNot(TokenType.LPAREN))
+            return null;
+        if (this.expectedPeekNot(TokenType.IDENT))
+            return null;
+        Identifier variable = new Identifier(this.curToken, this.curToken.literal());
+        if (this.expectedPeekNot(TokenType.IN))
+            return null;
+        this.nextToken();
+        Expression iterable = this.parseExpression(Precedence.LOWEST);
+        Expression end = null;
+        if (this.peekTokenIs(TokenType.DOTDOT)) {
+            this.nextToken();
+            this.nextToken();
+            end = this.parseExpression(Precedence.LOWEST);
+        }
+        if (this.expectedPeekNot(TokenType.RPAREN))
+            return null;
+        if (this.expectedPeekNot(TokenType.LBRACE))
+            return null;
+        BlockStatement body = this.parseBlockStatement();
+
+        if(this.peekTokenIs(TokenType.SEMICOL))
+            this.nextToken();
+
+        return new ForStatement(forTok, variable, iterable, end, body);
+    }
+
     private Statement parseReturnStatement() {
         Token returnTok = this.curToken;
         this.nextToken();
@@ -322,6 +393,18 @@ public class Parser {
         return new ReturnStatement(returnTok, value);
     }
 
+    private Statement parseYieldStatement() {
+        Token yieldTok = this.curToken;
+        this.nextToken();
+
+        Expression value = this.parseExpression(Precedence.LOWEST);
+
+        if(this.peekTokenIs(TokenType.SEMICOL))
+            this.nextToken();
+
+        return new YieldStatement(yieldTok, value);
+    }
+
     private Expression parseExpression(Precedence precedence) {
         PrefixParseFn prefixFn = this.prefixParseMap.get(this.curToken.type());
         if (prefixFn == null) {
@@ -0,0 +1,62 @@
+import Interpreter.Interpreter;
+import Interpreter.ObjSystem.Entity;
+import Interpreter.ObjSystem.Environment;
+import Parser.AST.Program;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Scripts run through the same parse and evaluate pipeline as Karaoke, checked by the
+ * inspected form of their result.
+ */
+class KaraokeTest {
+
+    @BeforeAll
+    static void init() {
+        Interpreter.init();
+    }
+
+    static String run(String source) {
+        return run(source, new Environment());
+    }
+
+    static String run(String source, Environment env) {
+        List<String> errors = new ArrayList<>(0);
+        Program prg = Karaoke.parse(source, errors);
+        assertTrue(errors.isEmpty(), () -> "parse errors: " + errors);
+        Entity result = Karaoke.evaluate(prg, env);
+        return result != null ? result.Inspect() : null;
+    }
+
+    @Test
+    void bindingOfAnEmptyBlock() {
+        assertEquals("5", run("var x = if (true) {}; 5"));
+        assertEquals("[1, 2]", run("var x = if (false) { 1 }; var y = if (true) {}; [1, 2]"));
+    }
+
+    @Test
+    void cancelledTaskLeavesCompiledLoop() throws InterruptedException {
+        // warmed up first, so the long call of the child runs compiled; it is cancelled when the parent returns
+        assertEquals("1", run("var count = fn(n) { var s = 0; var i = 0; var j = 0;"
+                + "while (j < n) { i = 0; while (i < n) { s = (s * 31 + i) / 3; i = i + 1; }; j = j + 1; }; s };"
+                + "var child = fn(c) { send(c, 1); count(2000000000) };"
+                + "var parent = fn() { for (k in 0..2000) { count(1); }; var c = channel(0); spawn(child, c); recv(c) };"
+                + "await(spawn(parent))"));
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (busyTasks() && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertFalse(busyTasks(), "a cancelled task is still running");
+    }
+
+    private static boolean busyTasks() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(t -> t.getName().startsWith("karaoke-task-") && t.getState() == Thread.State.RUNNABLE);
+    }
+}